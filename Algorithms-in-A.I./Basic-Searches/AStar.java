@@ -0,0 +1,119 @@
+/*
+ * File:   AStar.java
+ * Author: Alain Chen
+ *
+ * This class runs A* from a root node without printing anything,
+ * so it can be used by Searches as well as by batch runs.
+ * It keeps one node per state: a StateTable maps each generated state to
+ * its node, and an open node is moved in the open list when a cheaper
+ * path to it is found. By default the open list is a BucketQueue.
+ *
+ */
+package BasicAISearches;
+import java.util.ArrayList;
+
+public class AStar {
+
+    private final OpenList fringe;
+    private SolutionCache cache;
+    private int traceLimit;
+    private long nodesExpanded;
+    private long nodesReopened;
+    private int statesGenerated;
+
+    public AStar()
+    {
+        this(new BucketQueue());
+    }
+
+    public AStar(OpenList fringe)
+    {
+        this.fringe = fringe;
+    }
+
+    //Use and fill a cache of solved states. Each expanded node is
+    //looked up, and a cached state gets its exact cost as heuristic.
+    public void setSolutionCache(SolutionCache cache)
+    {
+        this.cache = cache;
+    }
+
+    //Print the first n nodes expanded, as Searches does.
+    public void setTrace(int n)
+    {
+        traceLimit = n;
+    }
+
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    public long getNodesReopened()
+    {
+        return nodesReopened;
+    }
+
+    public int getStatesGenerated()
+    {
+        return statesGenerated;
+    }
+
+    //Returns the goal node of a cheapest solution, or null if there is none.
+    public Node search(Node root)
+    {
+        nodesExpanded = 0;
+        nodesReopened = 0;
+        fringe.clear();
+        //Maps every generated state to its node, open or closed.
+        StateTable index = new StateTable(root.getDirt().length);
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        index.put(root.getDirt(), root.position(), 0);
+        nodes.add(root);
+        fringe.add(root);
+
+        while( !fringe.isEmpty() )
+        {
+            Node node = fringe.poll();
+
+            //A cached state is put back with its exact cost to the goal.
+            //Once it comes out with that cost, no path can beat it.
+            SolutionCache.Solution cached = cache == null ? null 
+                    : cache.get(node);
+            if( cached != null )
+            {
+                if( node.hTenths() == cached.costTenths() )
+                {
+                    statesGenerated = nodes.size();
+                    Node goal = cached.apply(node);
+                    cache.putPath(goal);
+                    return goal;
+                }
+                node.setExactHeuristic(cached.getCost());
+                fringe.add(node);
+                continue;
+            }
+
+            if( nodesExpanded < traceLimit )
+            {
+                System.out.print((nodesExpanded+1)+". ");
+                node.printNode();
+            }
+            nodesExpanded++;
+
+            //Check for goal test.
+            if( node.goalTest() )
+            {
+                statesGenerated = nodes.size();
+                if( cache != null )
+                    cache.putPath(node);
+                return node;
+            }
+
+            //Expand node.
+            nodesReopened += node.expandNode(fringe, index, nodes);
+        }
+        statesGenerated = nodes.size();
+        return null;
+    }
+}
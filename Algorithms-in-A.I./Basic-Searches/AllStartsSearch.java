@@ -0,0 +1,216 @@
+/*
+ * File:   AllStartsSearch.java
+ * Author: Alain Chen
+ *
+ * This class finds the optimal cost of cleaning a room from every start
+ * tile at once. It runs one search backwards from all the
+ * goal states, the clean room with the robot on any tile, over the
+ * actions turned around: a move comes from the neighbouring tile, and a
+ * suck comes from the same tile with its dirt back. Only dirt of the
+ * given layout is ever put back, so the search stays within its subsets.
+ *
+ * Going backwards from a state, the robot has to put back the dirt of
+ * the layout that the state is missing, which means visiting each of
+ * those tiles. That is the forward problem with the missing dirt, so
+ * Node's heuristic of the missing dirt is a consistent bound on the way
+ * to a full layout, and the search orders states by cost plus that bound
+ * as A* does. A state is settled with its optimal cost to a goal, and
+ * the search stops once the full layout is settled with the robot on
+ * every tile it can reach, which replaces one forward search per start
+ * tile. States that can not be on a path to one of those starts cheaper
+ * than the dearest start are never settled.
+ *
+ */
+package BasicAISearches;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+public class AllStartsSearch {
+
+    //Step costs in tenths.
+    private static final int VERTICAL = 13, HORIZONTAL = 10;
+
+    private final int dirtWidth;
+    private final int dirtHeight;
+    private final int words;
+    //A record per state. Its cost is the cost to a goal, its parent the
+    //next state on the way and its action the one that leads there.
+    private final NodeArena arena;
+    private final StateTable index;
+    private final long[] state;
+    private final long[] missing;
+    private long[] layout;
+    private DistanceOracle oracle;
+    private int[] startRecord;//Record of the full layout by position.
+    private long nodesExpanded;
+
+    public AllStartsSearch(int dirtWidth, int dirtHeight)
+    {
+        this.dirtWidth = dirtWidth;
+        this.dirtHeight = dirtHeight;
+        words = ((dirtWidth-1)*(dirtHeight-1)+63)/64;
+        arena = new NodeArena(words, 1024);
+        index = new StateTable(words);
+        state = new long[words];
+        missing = new long[words];
+    }
+
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    //Number of states with a cost, settled or not.
+    public int getStatesGenerated()
+    {
+        return arena.size();
+    }
+
+    //Searches the dirt layout of the given node. Its robot position and
+    //cost do not matter.
+    public void search(Node layout)
+    {
+        this.layout = layout.getDirt().clone();
+        oracle = layout.getOracle();
+        arena.clear();
+        index.clear();
+        nodesExpanded = 0;
+        startRecord = new int[dirtWidth*dirtHeight];
+        Arrays.fill(startRecord, -1);
+        PriorityQueue<Long> fringe = new PriorityQueue<Long>();
+
+        //Every clean state is a goal. The full layout has to be settled
+        //on every tile from which the robot can reach all the dirt.
+        Arrays.fill(state, 0);
+        int starts = 0;
+        for( int x = 1; x < dirtHeight; x++ )
+            for( int y = 1; y < dirtWidth; y++ )
+                if( isFree(x, y) )
+                {
+                    relax(state, x*dirtWidth+y, 0, -1, -1, fringe);
+                    if( reachesLayout(x, y) )
+                        starts++;
+                }
+
+        while( !fringe.isEmpty() && starts > 0 )
+        {
+            long top = fringe.poll();
+            int id = (int)top;
+            if( arena.isClosed(id) || arena.getCost(id) 
+                    + arena.getHeuristic(id) != top>>>32 )
+                continue;//Stale entry.
+            arena.setClosed(id, true);
+            arena.getDirt(id, state);
+            int p = arena.getPosition(id);
+            if( Arrays.equals(state, this.layout) )
+            {
+                startRecord[p] = id;
+                starts--;
+            }
+            nodesExpanded++;
+            expand(id, p, fringe);
+        }
+    }
+
+    //Generates the predecessors of a settled record. Its dirt is in the
+    //state array.
+    private void expand(int id, int p, PriorityQueue<Long> fringe)
+    {
+        int g = arena.getCost(id);
+        int x = p/dirtWidth, y = p%dirtWidth;
+        //The robot came from a neighbour, moving towards this tile.
+        if( x > 1 && isFree(x-1, y) )
+            relax(state, p-dirtWidth, g+VERTICAL, id, Node.DOWN, fringe);
+        if( x < dirtHeight-1 && isFree(x+1, y) )
+            relax(state, p+dirtWidth, g+VERTICAL, id, Node.UP, fringe);
+        if( y > 1 && isFree(x, y-1) )
+            relax(state, p-1, g+HORIZONTAL, id, Node.RIGHT, fringe);
+        if( y < dirtWidth-1 && isFree(x, y+1) )
+            relax(state, p+1, g+HORIZONTAL, id, Node.LEFT, fringe);
+        //Or it sucked here, if the layout has dirt on this tile.
+        int b = (x-1)*(dirtWidth-1)+(y-1);
+        if( (state[b>>>6] & (1L<<b)) == 0
+                && (layout[b>>>6] & (1L<<b)) != 0 )
+        {
+            state[b>>>6] |= 1L<<b;
+            relax(state, p, g, id, Node.SUCK, fringe);
+            state[b>>>6] &= ~(1L<<b);
+        }
+    }
+
+    private boolean isFree(int x, int y)
+    {
+        return oracle == null || !oracle.isBlocked(x, y);
+    }
+
+    private boolean reachesLayout(int x, int y)
+    {
+        if( oracle == null )
+            return true;
+        for( int w = 0; w < words; w++ )
+            for( long bits = layout[w]; bits != 0; bits &= bits-1 )
+            {
+                int b = (w<<6) + Long.numberOfTrailingZeros(bits);
+                if( oracle.distance(x, y, b/(dirtWidth-1)+1, 
+                        b%(dirtWidth-1)+1) == DistanceOracle.UNREACHABLE )
+                    return false;
+            }
+        return true;
+    }
+
+    //Offers a path of cost g through next to the state (dirt, pos).
+    private void relax(long[] dirt, int pos, int g, int next, int act,
+            PriorityQueue<Long> fringe)
+    {
+        int id = index.get(dirt, pos);
+        if( id < 0 )
+        {
+            id = arena.add(dirt, pos, g, heuristic(dirt, pos), next, act);
+            index.put(dirt, pos, id);
+        }
+        else if( arena.isClosed(id) || g >= arena.getCost(id) )
+            return;
+        else
+            arena.setPath(id, g, next, act);
+        fringe.add((long)(g + arena.getHeuristic(id))<<32 | id);
+    }
+
+    //Node's heuristic for cleaning the dirt the state is missing.
+    private int heuristic(long[] dirt, int pos)
+    {
+        for( int w = 0; w < words; w++ )
+            missing[w] = layout[w] & ~dirt[w];
+        return (int)Math.round(10*Node.heuristicFunction(
+                DirtSummary.of(missing, dirtWidth, oracle), missing, 
+                dirtWidth, pos/dirtWidth, pos%dirtWidth));
+    }
+
+    //The optimal cost of cleaning the whole layout from tile (x,y), or
+    //-1 if the robot can not start there.
+    public double getCost(int x, int y)
+    {
+        int id = startRecord[x*dirtWidth+y];
+        return id < 0 ? -1 : arena.getCost(id)/10.0;
+    }
+
+    //The optimal cost in tenths from any settled state, or -1 if the
+    //search did not settle it.
+    public int getCostTenths(long[] dirt, int x, int y)
+    {
+        int id = index.get(dirt, x*dirtWidth+y);
+        return id < 0 || !arena.isClosed(id) ? -1 : arena.getCost(id);
+    }
+
+    //The goal node of a cheapest path from the start node, which must
+    //be in a settled state, or null if it is not.
+    public Node getSolution(Node start)
+    {
+        int id = index.get(start.getDirt(), start.position());
+        if( id < 0 || !arena.isClosed(id) )
+            return null;
+        Node n = start;
+        for( ; arena.getParent(id) >= 0; id = arena.getParent(id) )
+            n = n.successor(arena.getAction(id));
+        return n;
+    }
+}
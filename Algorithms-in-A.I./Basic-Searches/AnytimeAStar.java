@@ -0,0 +1,256 @@
+/*
+ * File:   AnytimeAStar.java
+ * Author: Alain Chen
+ *
+ * This class implements anytime repairing A* (ARA*).
+ * The first pass is a weighted A* that orders nodes by g + w*h with a
+ * large weight, so a solution is found quickly. Every later pass lowers
+ * the weight and improves the solution, until the weight is 1 and the
+ * solution is optimal or the deadline passes.
+ *
+ * The passes share their nodes. A node that gets a cheaper path after
+ * it was expanded in a pass is not expanded again in that pass, but is
+ * kept aside and put back on the fringe for the next one.
+ *
+ * The cost of the best solution is at most the reported bound times the
+ * optimal cost.
+ *
+ */
+package BasicAISearches;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+public class AnytimeAStar {
+
+    //The clock is read once every this many expansions.
+    private static final int CLOCK_INTERVAL = 1024;
+
+    private final double initialWeight;
+    private final double weightStep;
+    private double weight;
+    private StateTable index;
+    private ArrayList<Node> nodes;
+    private int[] closedPass;//Pass in which each node was last expanded.
+    private boolean[] inconsistent;
+    private ArrayList<Node> incons;
+    private PriorityQueue<Entry> fringe;
+    private int pass;
+    private long deadline;
+    private boolean timedOut;
+    private Node best;
+    private double bound;
+    private int solutions;
+    private long nodesExpanded;
+
+    //A fringe entry. It is stale once its node has a cheaper path or has
+    //been expanded in this pass.
+    private static final class Entry implements Comparable<Entry> {
+
+        final Node node;
+        final double key;
+        final int g;
+
+        Entry(Node node, double key)
+        {
+            this.node = node;
+            this.key = key;
+            g = node.gTenths();
+        }
+
+        public int compareTo(Entry o)
+        {
+            int c = Double.compare(key, o.key);
+            if( c != 0 )
+                return c;
+            return Integer.compare(o.g, g);
+        }
+    }
+
+    //The first pass uses initialWeight, and each pass after it uses
+    //weightStep less, down to 1.
+    public AnytimeAStar(double initialWeight, double weightStep)
+    {
+        this.initialWeight = Math.max(1, initialWeight);
+        this.weightStep = weightStep;
+    }
+
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    //Number of improved solutions found.
+    public int getSolutionsFound()
+    {
+        return solutions;
+    }
+
+    //The best solution cost divided by the optimal cost is at most this.
+    public double getBound()
+    {
+        return bound;
+    }
+
+    //Whether the search stopped at the deadline before proving the
+    //solution optimal.
+    public boolean timedOut()
+    {
+        return timedOut;
+    }
+
+    //Searches until the solution is optimal or timeLimitNanos have passed.
+    //Returns the goal node of the best solution found, or null.
+    public Node search(Node root, long timeLimitNanos)
+    {
+        deadline = System.nanoTime() + timeLimitNanos;
+        timedOut = false;
+        weight = initialWeight;
+        index = new StateTable(root.getDirt().length);
+        nodes = new ArrayList<Node>();
+        closedPass = new int[1024];
+        inconsistent = new boolean[1024];
+        incons = new ArrayList<Node>();
+        fringe = new PriorityQueue<Entry>();
+        pass = 1;
+        best = null;
+        bound = Double.POSITIVE_INFINITY;
+        solutions = 0;
+        nodesExpanded = 0;
+
+        index.put(root.getDirt(), root.position(), 0);
+        nodes.add(root);
+        fringe.add(new Entry(root, key(root)));
+        while( true )
+        {
+            improvePath();
+            //A pass cut short proves nothing about its weight, but the
+            //last pass's bound still holds, as best only got cheaper.
+            bound = Math.min(timedOut ? bound : weight, suboptimality());
+            if( timedOut )
+                return best;
+            if( weight <= 1 || best == null && fringe.isEmpty() )
+                return best;
+
+            //Next pass: a lower weight, with the kept aside nodes back on
+            //the fringe and every key worked out again.
+            weight = Math.max(1, weight-weightStep);
+            pass++;
+            ArrayList<Node> open = new ArrayList<Node>(incons);
+            for( Node n : incons )
+                inconsistent[id(n)] = false;
+            incons.clear();
+            for( Entry e : fringe )
+                if( !stale(e) )
+                    open.add(e.node);
+            fringe.clear();
+            for( Node n : open )
+                fringe.add(new Entry(n, key(n)));
+        }
+    }
+
+    private double key(Node n)
+    {
+        return n.gTenths() + weight*n.hTenths();
+    }
+
+    private int id(Node n)
+    {
+        return index.get(n.getDirt(), n.position());
+    }
+
+    private boolean stale(Entry e)
+    {
+        return e.g != e.node.gTenths() || closedPass[id(e.node)] == pass;
+    }
+
+    //Expands nodes until none on the fringe can lead to a solution better
+    //than the best one, or time runs out.
+    private void improvePath()
+    {
+        int polls = 0;
+        while( !fringe.isEmpty() )
+        {
+            Entry e = fringe.peek();
+            if( best != null && e.key >= best.gTenths() )
+                return;
+            //The clock is read before a node is taken off the fringe, so
+            //at the deadline every open node is still there for the bound.
+            if( ++polls % CLOCK_INTERVAL == 0 
+                    && System.nanoTime() > deadline )
+            {
+                timedOut = true;
+                return;
+            }
+            fringe.poll();
+            if( stale(e) )
+                continue;
+            Node node = e.node;
+            closedPass[id(node)] = pass;
+            if( node.goalTest() )
+            {
+                if( best == null || node.gTenths() < best.gTenths() )
+                {
+                    //Later passes may give the nodes on the path cheaper
+                    //paths of their own, so keep a copy.
+                    best = node.copyPath();
+                    solutions++;
+                }
+                continue;
+            }
+            nodesExpanded++;
+            for( int a = Node.NUM_ACTIONS-1; a >= 0; a-- )
+            {
+                Node n = node.successor(a);
+                if( n != null )
+                    relax(n);
+            }
+        }
+    }
+
+    private void relax(Node n)
+    {
+        int id = index.get(n.getDirt(), n.position());
+        if( id < 0 )
+        {
+            id = nodes.size();
+            index.put(n.getDirt(), n.position(), id);
+            nodes.add(n);
+            if( id >= closedPass.length )
+            {
+                closedPass = Arrays.copyOf(closedPass, 2*id);
+                inconsistent = Arrays.copyOf(inconsistent, 2*id);
+            }
+            fringe.add(new Entry(n, key(n)));
+            return;
+        }
+        Node old = nodes.get(id);
+        if( n.gTenths() >= old.gTenths() )
+            return;
+        old.takePath(n);
+        if( closedPass[id] != pass )
+            fringe.add(new Entry(old, key(old)));
+        else if( !inconsistent[id] )
+        {
+            inconsistent[id] = true;
+            incons.add(old);
+        }
+    }
+
+    //The best cost over the lowest f-score of any node that is still
+    //open or kept aside, which bounds how far from optimal it can be.
+    private double suboptimality()
+    {
+        if( best == null )
+            return Double.POSITIVE_INFINITY;
+        int lowest = best.gTenths();
+        for( Entry e : fringe )
+            if( !stale(e) )
+                lowest = Math.min(lowest, e.node.fTenths());
+        for( Node n : incons )
+            lowest = Math.min(lowest, n.fTenths());
+        if( lowest == 0 )
+            return 1;
+        return Math.max(1, (double)best.gTenths()/lowest);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * File:   ArenaAStar.java
+ * Author: Alain Chen
+ *
+ * This class runs A* with its nodes kept in a NodeArena instead of as
+ * Node objects. The fringe holds record indices in buckets by f-score
+ * and path cost, as BucketQueue does, and an ArenaIndex maps every
+ * state to its record without a second copy of the state. Nothing is
+ * allocated per node. A record keeps the spanning tree weight of its
+ * dirt in tenths in the arena's spare int, which is the only part of
+ * its dirt summary that is not quick to work out again, and a record
+ * being expanded is loaded into one scratch summary. A sucking child
+ * drops the tile from it in place, as IDA* does, so the weight is
+ * looked up only when the robot sucks.
+ *
+ * A cheaper path to a known state rewrites its record and adds the
+ * index to the fringe again. The old entry stays behind and is skipped
+ * when it comes out, since its path cost no longer matches the record.
+ *
+ */
+package BasicAISearches;
+import java.util.Arrays;
+
+public class ArenaAStar {
+
+    private final NodeArena arena;
+    private final ArenaIndex index;
+    private final int dirtWidth;
+    private final int dirtHeight;
+    private final int words;
+    private final long[] dirt;//State being expanded.
+    private final long[] child;//Dirt of a sucking child.
+    private final DirtSummary summary;//Of the record being expanded.
+    private int[][][] buckets;//Record indices by f-score, then path cost.
+    private int[][] counts;
+    private int[] highest;//No list above this one has entries.
+    private int lowest;//No bucket below this one has entries.
+    private long nodesExpanded;
+    private long nodesReopened;
+
+    public ArenaAStar(int dirtWidth, int dirtHeight)
+    {
+        this.dirtWidth = dirtWidth;
+        this.dirtHeight = dirtHeight;
+        words = ((dirtWidth-1)*(dirtHeight-1)+63)/64;
+        arena = new NodeArena(words, 1024);
+        index = new ArenaIndex(arena);
+        dirt = new long[words];
+        child = new long[words];
+        summary = DirtSummary.scratch((dirtWidth-1)*(dirtHeight-1), null);
+    }
+
+    public NodeArena getArena()
+    {
+        return arena;
+    }
+
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    public long getNodesReopened()
+    {
+        return nodesReopened;
+    }
+
+    //Returns the record of the goal of a cheapest solution,
+    //or -1 if there is none. Rooms with blocked tiles are refused.
+    public int search(Node root)
+    {
+        if( root.getOracle() != null )
+            throw new IllegalArgumentException(
+                    "Rooms with blocked tiles are not supported");
+        arena.clear();
+        index.clear();
+        buckets = new int[256][][];
+        counts = new int[256][];
+        highest = new int[256];
+        lowest = Integer.MAX_VALUE;
+        nodesExpanded = 0;
+        nodesReopened = 0;
+
+        long[] start = root.getDirt();
+        summary.load(start, dirtWidth);
+        int h = heuristic(start, root.getRobotPosX(), root.getRobotPosY());
+        int r = arena.add(start, root.position(), 0, h, -1, -1);
+        arena.setSpare(r, tenths(summary.getTreeWeight()));
+        index.add(r, start, root.position());
+        push(h, 0, r);
+
+        while( true )
+        {
+            int n = pop();
+            if( n < 0 )
+                return -1;
+            int g = arena.getCost(n);
+            arena.getDirt(n, dirt);
+            if( isClean(dirt) )
+                return n;
+            arena.setClosed(n, true);
+            nodesExpanded++;
+            expand(n, g);
+        }
+    }
+
+    //Removes the record with the lowest f-score and of those the highest
+    //path cost, skipping stale entries. Returns -1 if there is none.
+    private int pop()
+    {
+        while( lowest < buckets.length )
+        {
+            int f = lowest;
+            if( buckets[f] == null )
+            {
+                lowest++;
+                continue;
+            }
+            int g = highest[f];
+            while( g >= 0 && counts[f][g] == 0 )
+                g--;
+            highest[f] = g;
+            if( g < 0 )
+            {
+                lowest++;
+                continue;
+            }
+            int n = buckets[f][g][--counts[f][g]];
+            //An entry is stale if the record has since been reached
+            //more cheaply, or was expanded already.
+            if( arena.getCost(n) == g && !arena.isClosed(n) )
+                return n;
+        }
+        return -1;
+    }
+
+    //Adds the successors of record n, in the same order as
+    //Node.expandNode. The dirt of n is in the dirt array.
+    private void expand(int n, int g)
+    {
+        int pos = arena.getPosition(n);
+        int x = pos/dirtWidth, y = pos%dirtWidth;
+        summary.load(dirt, dirtWidth, arena.getSpare(n)/10.0);
+        if( x < dirtHeight-1 )
+            relax(dirt, x+1, y, g+13, n, Node.DOWN);
+        if( y < dirtWidth-1 )
+            relax(dirt, x, y+1, g+10, n, Node.RIGHT);
+        int b = (x-1)*(dirtWidth-1)+(y-1);
+        if( (dirt[b>>>6] & (1L<<b)) != 0 )
+        {
+            System.arraycopy(dirt, 0, child, 0, words);
+            child[b>>>6] &= ~(1L<<b);
+            summary.remove(x, y, child, dirtWidth);
+            relax(child, x, y, g, n, Node.SUCK);
+            summary.restore();
+        }
+        if( y > 1 )
+            relax(dirt, x, y-1, g+10, n, Node.LEFT);
+        if( x > 1 )
+            relax(dirt, x-1, y, g+13, n, Node.UP);
+    }
+
+    //Relaxes a child whose dirt is summarized by the scratch summary.
+    private void relax(long[] state, int x, int y, int g, int parent,
+            int act)
+    {
+        int pos = x*dirtWidth+y;
+        int id = index.get(state, pos);
+        if( id < 0 )
+        {
+            int h = heuristic(state, x, y);
+            id = arena.add(state, pos, g, h, parent, act);
+            arena.setSpare(id, tenths(summary.getTreeWeight()));
+            index.add(id, state, pos);
+            push(g+h, g, id);
+            return;
+        }
+        if( g >= arena.getCost(id) )
+            return;
+        arena.setPath(id, g, parent, act);
+        if( arena.isClosed(id) )
+        {
+            arena.setClosed(id, false);
+            nodesReopened++;
+        }
+        push(g+arena.getHeuristic(id), g, id);
+    }
+
+    private int heuristic(long[] state, int x, int y)
+    {
+        return tenths(Node.heuristicFunction(summary, state, dirtWidth, x,
+                y));
+    }
+
+    private static int tenths(double value)
+    {
+        return (int)Math.round(10*value);
+    }
+
+    private void push(int f, int g, int n)
+    {
+        if( f >= buckets.length )
+        {
+            int length = Math.max(f+1, 2*buckets.length);
+            buckets = Arrays.copyOf(buckets, length);
+            counts = Arrays.copyOf(counts, length);
+            highest = Arrays.copyOf(highest, length);
+        }
+        if( buckets[f] == null )
+        {
+            buckets[f] = new int[f+1][];
+            counts[f] = new int[f+1];
+        }
+        int[] list = buckets[f][g];
+        if( list == null )
+            list = buckets[f][g] = new int[16];
+        else if( counts[f][g] == list.length )
+            list = buckets[f][g] = Arrays.copyOf(list, 2*list.length);
+        list[counts[f][g]++] = n;
+        if( g > highest[f] )
+            highest[f] = g;
+        if( f < lowest )
+            lowest = f;
+    }
+
+    private static boolean isClean(long[] dirt)
+    {
+        for( int w = 0; w < dirt.length; w++ )
+            if( dirt[w] != 0 )
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * File:   ArenaIndex.java
+ * Author: Alain Chen
+ *
+ * This class is a hash table from states to the records of a NodeArena
+ * that hold them. Unlike StateTable it keeps no copy of the keys: a slot
+ * holds the record index and the hash of its state, and a lookup that
+ * finds a matching hash compares the state against the record itself.
+ * A state costs two ints per slot however large its dirt bitmask is.
+ * It uses open addressing with linear probing, like StateTable.
+ *
+ */
+package BasicAISearches;
+import java.util.Arrays;
+
+public class ArenaIndex {
+
+    private final NodeArena arena;
+    private int[] records;//Record index plus one, 0 for an empty slot.
+    private int[] hashes;
+    private int capacity;//Number of slots, always a power of two.
+    private int size;
+
+    public ArenaIndex(NodeArena arena)
+    {
+        this(arena, 1024);
+    }
+
+    public ArenaIndex(NodeArena arena, int expectedSize)
+    {
+        this.arena = arena;
+        capacity = 16;
+        while( capacity < 2*expectedSize )
+            capacity <<= 1;
+        records = new int[capacity];
+        hashes = new int[capacity];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    //Returns the record holding the state, or -1 if there is none.
+    public int get(long[] dirt, int pos)
+    {
+        int h = StateTable.hash(dirt, pos);
+        for( int slot = h & (capacity-1); records[slot] != 0;
+                slot = (slot+1) & (capacity-1) )
+            if( hashes[slot] == h
+                    && arena.holds(records[slot]-1, dirt, pos) )
+                return records[slot]-1;
+        return -1;
+    }
+
+    //Adds record i, which holds the given state and is not in the table.
+    public void add(int i, long[] dirt, int pos)
+    {
+        int h = StateTable.hash(dirt, pos);
+        insert(i, h);
+        size++;
+        //Keep the load factor at or below one half.
+        if( 2*size > capacity )
+            grow();
+    }
+
+    public void clear()
+    {
+        Arrays.fill(records, 0);
+        size = 0;
+    }
+
+    private void insert(int i, int h)
+    {
+        int slot = h & (capacity-1);
+        while( records[slot] != 0 )
+            slot = (slot+1) & (capacity-1);
+        records[slot] = i+1;
+        hashes[slot] = h;
+    }
+
+    //The hashes are kept, so the records are not read again.
+    private void grow()
+    {
+        int[] oldRecords = records;
+        int[] oldHashes = hashes;
+        capacity <<= 1;
+        records = new int[capacity];
+        hashes = new int[capacity];
+        for( int s = 0; s < oldRecords.length; s++ )
+            if( oldRecords[s] != 0 )
+                insert(oldRecords[s]-1, oldHashes[s]);
+    }
+}
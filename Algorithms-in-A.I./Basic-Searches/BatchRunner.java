@@ -0,0 +1,230 @@
+/*
+ * File:   BatchRunner.java
+ * Author: Alain Chen
+ *
+ * This program solves a file of vacuum world instances with A* on a
+ * pool of threads, and writes one JSON line per instance as soon as it
+ * is solved:
+ *
+ *     {"id":"a","cost":13.2,"path":["LEFT","SUCK",...],"nodes":57,
+ *      "timeMs":1.25}
+ *
+ * The cost is null if the instance has no solution, and an instance
+ * that fails, or a line that can not be read, gets an "error" field
+ * instead. Lines come out in the order
+ * the instances finish, not the order they were read.
+ *
+ * The instances are read while the pool works, and only a few per
+ * thread are waiting at any time, so the file is never held in memory.
+ *
+ */
+package BasicAISearches;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class BatchRunner {
+
+    //Instances read ahead of the pool, per thread.
+    private static final int QUEUED_PER_THREAD = 4;
+
+    private final ExecutorService pool;
+    private final Semaphore slots;
+    private final Writer out;
+    private final SolutionCache cache;
+    private IOException writeError;
+
+    public BatchRunner(int threads, Writer out)
+    {
+        this(threads, out, null);
+    }
+
+    //All threads share the cache, which may be null.
+    public BatchRunner(int threads, Writer out, SolutionCache cache)
+    {
+        this.cache = cache;
+        pool = Executors.newFixedThreadPool(threads);
+        slots = new Semaphore(threads*QUEUED_PER_THREAD);
+        this.out = out;
+    }
+
+    //Solves every instance the reader gives and waits for all of them.
+    //Returns the number of instances read.
+    public long run(InstanceReader in) throws IOException, 
+            InterruptedException
+    {
+        long count = 0;
+        try
+        {
+            while( true )
+            {
+                RoomInstance instance;
+                try
+                {
+                    instance = in.next();
+                }
+                catch( IllegalArgumentException e )
+                {
+                    //A bad line is reported and the rest still run.
+                    StringBuilder line = new StringBuilder(
+                            "{\"id\":null,\"error\":");
+                    quote(line, e.getMessage());
+                    write(line.append('}').toString());
+                    continue;
+                }
+                if( instance == null )
+                    break;
+                //Wait for room before reading further ahead.
+                slots.acquire();
+                final RoomInstance task = instance;
+                pool.execute(() -> {
+                    try
+                    {
+                        write(solve(task));
+                    }
+                    finally
+                    {
+                        slots.release();
+                    }
+                });
+                count++;
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        synchronized(this)
+        {
+            out.flush();
+            if( writeError != null )
+                throw writeError;
+        }
+        return count;
+    }
+
+    //Solve one instance and format its result line.
+    private String solve(RoomInstance instance)
+    {
+        StringBuilder line = new StringBuilder("{\"id\":");
+        quote(line, instance.getId());
+        long time = System.nanoTime();
+        try
+        {
+            AStar search = new AStar();
+            search.setSolutionCache(cache);
+            Node goal = search.search(instance.createRoot());
+            double ms = (double)(System.nanoTime() - time)/1000000;
+            if( goal == null )
+                line.append(",\"cost\":null,\"path\":null");
+            else
+            {
+                line.append(",\"cost\":")
+                        .append(String.format(Locale.ROOT, "%.1f", 
+                                goal.getCost()))
+                        .append(",\"path\":[");
+                ArrayList<String> actions = goal.getActions();
+                for( int i = 0; i < actions.size(); i++ )
+                {
+                    if( i > 0 )
+                        line.append(',');
+                    quote(line, actions.get(i));
+                }
+                line.append(']');
+            }
+            line.append(",\"nodes\":").append(search.getNodesExpanded())
+                    .append(",\"timeMs\":")
+                    .append(String.format(Locale.ROOT, "%.2f", ms));
+        }
+        catch( RuntimeException | OutOfMemoryError e )
+        {
+            line.append(",\"error\":");
+            quote(line, e.toString());
+        }
+        return line.append('}').toString();
+    }
+
+    private static void quote(StringBuilder line, String s)
+    {
+        line.append('"');
+        for( int i = 0; i < s.length(); i++ )
+        {
+            char c = s.charAt(i);
+            if( c == '"' || c == '\\' )
+                line.append('\\').append(c);
+            else if( c < ' ' )
+                line.append(String.format("\\u%04x", (int)c));
+            else
+                line.append(c);
+        }
+        line.append('"');
+    }
+
+    private synchronized void write(String line)
+    {
+        if( writeError != null )
+            return;
+        try
+        {
+            out.write(line);
+            out.write('\n');
+            //Flushed line by line, so results can be read while the
+            //batch runs.
+            out.flush();
+        }
+        catch( IOException e )
+        {
+            writeError = e;
+        }
+    }
+
+    //Arguments: the instance file, optionally the output file (standard
+    //output if missing or "-"), optionally the number of threads
+    //(default one per processor), and optionally the number of states
+    //in a solution cache shared by the threads (default none).
+    public static void main(String[] args) throws IOException, 
+            InterruptedException
+    {
+        if( args.length < 1 )
+        {
+            System.err.println("Usage: BatchRunner instances [output] "
+                    + "[threads] [cache size]");
+            return;
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        SolutionCache cache = args.length > 3 
+                ? new SolutionCache(Integer.parseInt(args[3])) : null;
+        boolean toFile = args.length > 1 && !args[1].equals("-");
+        Writer out = toFile ? Files.newBufferedWriter(Paths.get(args[1]))
+                : new BufferedWriter(new OutputStreamWriter(System.out,
+                        StandardCharsets.UTF_8));
+        long time = System.nanoTime();
+        long count;
+        try( InstanceReader in = new InstanceReader(
+                Files.newBufferedReader(Paths.get(args[0]))) )
+        {
+            count = new BatchRunner(threads, out, cache).run(in);
+        }
+        finally
+        {
+            if( toFile )
+                out.close();
+            else
+                out.flush();
+        }
+        System.err.printf("Solved %d instances in %.2f ms\n", count,
+                (double)(System.nanoTime() - time)/1000000);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * File:   BeamSearch.java
+ * Author: Alain Chen
+ *
+ * This class implements beam search. It goes forward one layer of
+ * actions at a time and keeps only the best nodes of each layer, by
+ * f-score and then by highest path cost, up to the beam width. The
+ * fringe never holds more than the width in nodes, at the price of
+ * possibly missing the optimal solution, or any solution at all if the
+ * beam leads into a dead end.
+ *
+ * States already kept in an earlier layer are not kept again, so the
+ * beam does not walk back and forth.
+ *
+ */
+package BasicAISearches;
+import java.util.ArrayList;
+import java.util.Collections;
+
+public class BeamSearch {
+
+    private final int width;
+    private Node solution;
+    private long nodesExpanded;
+
+    public BeamSearch(int width)
+    {
+        if( width < 1 )
+            throw new IllegalArgumentException("Beam width below 1: " 
+                    + width);
+        this.width = width;
+    }
+
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    //The goal found by the last search, or null.
+    public Node getSolution()
+    {
+        return solution;
+    }
+
+    //The cost of the solution found, or infinity if there is none.
+    public double getCost()
+    {
+        return solution == null ? Double.POSITIVE_INFINITY 
+                : solution.getCost();
+    }
+
+    public ProblemState search(Node root)
+    {
+        solution = null;
+        nodesExpanded = 0;
+        StateTable seen = new StateTable(root.getDirt().length);
+        seen.add(root.getDirt(), root.position());
+        ArrayList<Node> layer = new ArrayList<Node>();
+        layer.add(root);
+
+        while( !layer.isEmpty() )
+        {
+            //The cheapest goal in the layer ends the search.
+            for( Node n : layer )
+                if( n.goalTest() && (solution == null 
+                        || n.gTenths() < solution.gTenths()) )
+                    solution = n;
+            if( solution != null )
+                return ProblemState.SOL_FOUND;
+
+            //Successors of the whole layer, cheapest per state.
+            ArrayList<Node> next = new ArrayList<Node>();
+            StateTable index = new StateTable(root.getDirt().length);
+            for( Node node : layer )
+            {
+                nodesExpanded++;
+                for( int a = Node.NUM_ACTIONS-1; a >= 0; a-- )
+                {
+                    Node n = node.successor(a);
+                    if( n == null || seen.contains(n.getDirt(), 
+                            n.position()) )
+                        continue;
+                    int id = index.get(n.getDirt(), n.position());
+                    if( id < 0 )
+                    {
+                        index.put(n.getDirt(), n.position(), next.size());
+                        next.add(n);
+                    }
+                    else if( n.gTenths() < next.get(id).gTenths() )
+                        next.set(id, n);
+                }
+            }
+
+            Collections.sort(next);
+            if( next.size() > width )
+                next.subList(width, next.size()).clear();
+            for( Node n : next )
+                seen.add(n.getDirt(), n.position());
+            layer = next;
+        }
+        return ProblemState.FAILURE;
+    }
+}
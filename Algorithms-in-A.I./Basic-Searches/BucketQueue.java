@@ -0,0 +1,141 @@
+/*
+ * File:   BucketQueue.java
+ * Author: Alain Chen
+ *
+ * This class is an open list that keeps nodes in buckets by f-score and
+ * path cost, both counted in tenths. Every step cost is 1.0 or 1.3 and
+ * every heuristic value is made of the same steps, so the costs are
+ * whole numbers of tenths and no doubles are compared.
+ *
+ * The buckets are indexed directly by f-score, and inside a bucket by
+ * path cost, so adding and removing a node takes constant time. Finding
+ * the first node scans forward over empty buckets; with a consistent
+ * heuristic the lowest f-score never goes down, so the scan is cheap
+ * over the whole search. Among nodes of the same f-score the one with
+ * the highest path cost comes first, since it is closest to a goal.
+ *
+ */
+package BasicAISearches;
+import java.util.Arrays;
+
+public class BucketQueue implements OpenList {
+
+    private Bucket[] buckets;//Indexed by f-score in tenths.
+    private int lowest;//No bucket below this one has nodes.
+    private int size;
+
+    //The nodes of one f-score, in lists by path cost.
+    //A node's heapIndex is its position in its list.
+    private static final class Bucket {
+
+        Node[][] lists = new Node[0][];
+        int[] counts = new int[0];
+        int highest = -1;//No list above this one has nodes.
+        int size;
+    }
+
+    public BucketQueue()
+    {
+        buckets = new Bucket[256];
+        lowest = Integer.MAX_VALUE;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void clear()
+    {
+        buckets = new Bucket[256];
+        lowest = Integer.MAX_VALUE;
+        size = 0;
+    }
+
+    public void add(Node n)
+    {
+        int f = n.fTenths(), g = n.gTenths();
+        if( f >= buckets.length )
+            buckets = Arrays.copyOf(buckets, Math.max(f+1, 2*buckets.length));
+        Bucket b = buckets[f];
+        if( b == null )
+            b = buckets[f] = new Bucket();
+        if( g >= b.lists.length )
+        {
+            int length = Math.max(g+1, 2*b.lists.length);
+            b.lists = Arrays.copyOf(b.lists, length);
+            b.counts = Arrays.copyOf(b.counts, length);
+        }
+        Node[] list = b.lists[g];
+        if( list == null )
+            list = b.lists[g] = new Node[16];
+        else if( b.counts[g] == list.length )
+            list = b.lists[g] = Arrays.copyOf(list, 2*list.length);
+        n.heapIndex = b.counts[g];
+        list[b.counts[g]++] = n;
+        b.size++;
+        if( g > b.highest )
+            b.highest = g;
+        if( f < lowest )
+            lowest = f;
+        size++;
+    }
+
+    //Removes and returns the node with the lowest f-score, and of those
+    //the one with the highest path cost.
+    public Node poll()
+    {
+        Node n = peek();
+        Bucket b = buckets[lowest];
+        int g = b.highest;
+        b.lists[g][--b.counts[g]] = null;
+        b.size--;
+        size--;
+        n.heapIndex = -1;
+        return n;
+    }
+
+    public Node peek()
+    {
+        if( size == 0 )
+            return null;
+        while( buckets[lowest] == null || buckets[lowest].size == 0 )
+            lowest++;
+        Bucket b = buckets[lowest];
+        while( b.counts[b.highest] == 0 )
+            b.highest--;
+        return b.lists[b.highest][b.counts[b.highest]-1];
+    }
+
+    public void remove(Node n)
+    {
+        Bucket b = buckets[n.fTenths()];
+        int g = n.gTenths();
+        Node[] list = b.lists[g];
+        //Move the last node of the list into the hole.
+        Node last = list[--b.counts[g]];
+        list[n.heapIndex] = last;
+        last.heapIndex = n.heapIndex;
+        list[b.counts[g]] = null;
+        b.size--;
+        size--;
+        n.heapIndex = -1;
+    }
+
+    public boolean contains(Node n)
+    {
+        if( n.heapIndex < 0 )
+            return false;
+        int f = n.fTenths(), g = n.gTenths();
+        if( f >= buckets.length || buckets[f] == null )
+            return false;
+        Bucket b = buckets[f];
+        return g < b.lists.length && n.heapIndex < b.counts[g]
+                && b.lists[g][n.heapIndex] == n;
+    }
+}
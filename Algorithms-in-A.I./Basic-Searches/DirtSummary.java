@@ -0,0 +1,339 @@
+/*
+ * File:   DirtSummary.java
+ * Author: Alain Chen
+ *
+ * This class holds the parts of the heuristic that only depend on the
+ * dirt: the dirty tiles, their bounding box and the weight of their
+ * minimum spanning tree. Moving the robot never changes the dirt, so a
+ * node shares its summary with the children it moves to, and only the
+ * terms that depend on the robot are worked out again for each node.
+ * A new summary is made only when the robot sucks.
+ *
+ * A depth-first search that keeps one state can take an editable copy
+ * instead, which drops a sucked tile in place and puts it back when the
+ * search backs up, without making any objects. A search that keeps its
+ * states as bitmasks can load them into one scratch summary in turn.
+ *
+ * In a room with blocked tiles the summary keeps the room's
+ * DistanceOracle, and the spanning tree and the distance to the nearest
+ * dirt use the walks around them. The bounding box still counts
+ * straight lines, which is never more than a walk.
+ *
+ */
+package BasicAISearches;
+import java.util.Arrays;
+
+public class DirtSummary {
+
+    //Spanning tree weights by dirt bitmask, one cache per search thread.
+    private static final ThreadLocal<HeuristicCache> MST_CACHE =
+            ThreadLocal.withInitial(() -> new HeuristicCache(1<<16));
+
+    private final int[] rows;//Row of each dirty tile.
+    private final int[] cols;//Column of each dirty tile.
+    private int count;//Dirty tiles, the first ones of rows and cols.
+    private int removed;//Tiles removed from an editable copy.
+    private int topmost, bottommost, leftmost, rightmost;
+    private double treeWeight;
+    private final DistanceOracle oracle;//Null in a room without walls.
+    //Only in an editable copy: for each tile removed, where it was and the
+    //box and weight before, and space for Prim's algorithm. They have room
+    //for as many tiles as rows and cols.
+    private int[] removedAt;
+    private int[] boxes;
+    private double[] weights;
+    private double[] dist;
+    private boolean[] inTree;
+
+    private DirtSummary(int[] rows, int[] cols, long[] dirt, int dirtWidth,
+            DistanceOracle oracle)
+    {
+        this.rows = rows;
+        this.cols = cols;
+        this.oracle = oracle;
+        count = rows.length;
+        summarize(dirt, dirtWidth, new double[count], new boolean[count]);
+    }
+
+    //An editable summary, filled in by editable() or load().
+    private DirtSummary(int[] rows, int[] cols, DistanceOracle oracle,
+            int count)
+    {
+        this.rows = rows;
+        this.cols = cols;
+        this.oracle = oracle;
+        this.count = count;
+        int tiles = rows.length;
+        removedAt = new int[tiles];
+        boxes = new int[4*tiles];
+        weights = new double[tiles];
+        dist = new double[tiles];
+        inTree = new boolean[tiles];
+    }
+
+    //Works out the box and the tree weight of the first count tiles.
+    private void summarize(long[] dirt, int dirtWidth, double[] dist,
+            boolean[] inTree)
+    {
+        boundingBox();
+        HeuristicCache cache = oracle == null ? MST_CACHE.get()
+                : oracle.treeCache();
+        double tree = cache.get(dirt, dirtWidth);
+        if( Double.isNaN(tree) )
+        {
+            tree = spanningTreeWeight(rows, cols, count, oracle, dist, 
+                    inTree);
+            cache.put(dirt, dirtWidth, tree);
+        }
+        treeWeight = tree;
+    }
+
+    //Summarize a dirt bitmask.
+    public static DirtSummary of(long[] dirt, int dirtWidth)
+    {
+        return of(dirt, dirtWidth, null);
+    }
+
+    //Summarize a dirt bitmask in a room with the given blocked tiles.
+    public static DirtSummary of(long[] dirt, int dirtWidth,
+            DistanceOracle oracle)
+    {
+        int count = 0;
+        for( int w = 0; w < dirt.length; w++ )
+            count += Long.bitCount(dirt[w]);
+        int[] rows = new int[count], cols = new int[count];
+        int k = 0;
+        for( int w = 0; w < dirt.length; w++ )
+            for( long bits = dirt[w]; bits != 0; bits &= bits-1 )
+            {
+                int b = (w<<6) + Long.numberOfTrailingZeros(bits);
+                rows[k] = b/(dirtWidth-1)+1;
+                cols[k] = b%(dirtWidth-1)+1;
+                k++;
+            }
+        return new DirtSummary(rows, cols, dirt, dirtWidth, oracle);
+    }
+
+    //The summary after the tile (x,y) is sucked, leaving dirtAfter.
+    public DirtSummary without(int x, int y, long[] dirtAfter,
+            int dirtWidth)
+    {
+        int[] r = new int[count-1], c = new int[count-1];
+        int k = 0;
+        for( int i = 0; i < count; i++ )
+            if( rows[i] != x || cols[i] != y )
+            {
+                r[k] = rows[i];
+                c[k] = cols[i];
+                k++;
+            }
+        return new DirtSummary(r, c, dirtAfter, dirtWidth, oracle);
+    }
+
+    //A copy of this summary that remove and restore change in place.
+    public DirtSummary editable()
+    {
+        DirtSummary copy = new DirtSummary(rows.clone(), cols.clone(), 
+                oracle, count);
+        copy.topmost = topmost;
+        copy.bottommost = bottommost;
+        copy.leftmost = leftmost;
+        copy.rightmost = rightmost;
+        copy.treeWeight = treeWeight;
+        return copy;
+    }
+
+    //An editable summary of no dirt, with room for the given number of
+    //dirty tiles, to be filled by load.
+    public static DirtSummary scratch(int tiles, DistanceOracle oracle)
+    {
+        return new DirtSummary(new int[tiles], new int[tiles], oracle, 0);
+    }
+
+    //Makes this editable summary one of the given dirt.
+    public void load(long[] dirt, int dirtWidth)
+    {
+        fill(dirt, dirtWidth);
+        summarize(dirt, dirtWidth, dist, inTree);
+    }
+
+    //The same, with the tree weight known already, so the cache is not
+    //looked at.
+    public void load(long[] dirt, int dirtWidth, double treeWeight)
+    {
+        fill(dirt, dirtWidth);
+        boundingBox();
+        this.treeWeight = treeWeight;
+    }
+
+    private void boundingBox()
+    {
+        int top = Integer.MAX_VALUE, bottom = Integer.MIN_VALUE;
+        int left = Integer.MAX_VALUE, right = Integer.MIN_VALUE;
+        for( int i = 0; i < count; i++ )
+        {
+            top = Math.min(top, rows[i]);
+            bottom = Math.max(bottom, rows[i]);
+            left = Math.min(left, cols[i]);
+            right = Math.max(right, cols[i]);
+        }
+        topmost = top;
+        bottommost = bottom;
+        leftmost = left;
+        rightmost = right;
+    }
+
+    private void fill(long[] dirt, int dirtWidth)
+    {
+        count = 0;
+        removed = 0;
+        for( int w = 0; w < dirt.length; w++ )
+            for( long bits = dirt[w]; bits != 0; bits &= bits-1 )
+            {
+                int b = (w<<6) + Long.numberOfTrailingZeros(bits);
+                rows[count] = b/(dirtWidth-1)+1;
+                cols[count] = b%(dirtWidth-1)+1;
+                count++;
+            }
+    }
+
+    //Drops the tile (x,y), which was sucked leaving dirtAfter, from an
+    //editable summary. The tiles left keep their order, which Prim's
+    //algorithm runs faster on, and the dropped one waits past the end.
+    public void remove(int x, int y, long[] dirtAfter, int dirtWidth)
+    {
+        int depth = removed++;
+        int i = 0;
+        while( rows[i] != x || cols[i] != y )
+            i++;
+        removedAt[depth] = i;
+        boxes[4*depth] = topmost;
+        boxes[4*depth+1] = bottommost;
+        boxes[4*depth+2] = leftmost;
+        boxes[4*depth+3] = rightmost;
+        weights[depth] = treeWeight;
+        count--;
+        System.arraycopy(rows, i+1, rows, i, count-i);
+        System.arraycopy(cols, i+1, cols, i, count-i);
+        rows[count] = x;
+        cols[count] = y;
+        summarize(dirtAfter, dirtWidth, dist, inTree);
+    }
+
+    //Puts back the tile removed last from an editable summary.
+    public void restore()
+    {
+        int depth = --removed;
+        int i = removedAt[depth];
+        int x = rows[count], y = cols[count];
+        System.arraycopy(rows, i, rows, i+1, count-i);
+        System.arraycopy(cols, i, cols, i+1, count-i);
+        rows[i] = x;
+        cols[i] = y;
+        count++;
+        topmost = boxes[4*depth];
+        bottommost = boxes[4*depth+1];
+        leftmost = boxes[4*depth+2];
+        rightmost = boxes[4*depth+3];
+        treeWeight = weights[depth];
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public double getTreeWeight()
+    {
+        return treeWeight;
+    }
+
+    //The blocked tiles of the room, or null if there are none.
+    public DistanceOracle getOracle()
+    {
+        return oracle;
+    }
+
+    //The distance between
+    //the leftmost position of dirt and rightmost position of dirt
+    //plus the distance between the topmost and bottommost position of dirt
+    //plus the minimum distance the robot needs
+    //to travel to one of those spots,
+    //all of those multiplied by their step costs.
+    //The box is stretched to include the robot.
+    //This bound is admissable as the robot needs to travel
+    //at least that distance to clean up all the dirt.
+    //It is also consistent: a move changes it by at most the step cost
+    //and sucking leaves it unchanged, since the box includes the robot.
+    public double boundingBoxBound(int robotPosX, int robotPosY)
+    {
+        int top = Math.min(topmost, robotPosX);
+        int bottom = Math.max(bottommost, robotPosX);
+        int left = Math.min(leftmost, robotPosY);
+        int right = Math.max(rightmost, robotPosY);
+        return 1.3*((bottom-top) + Math.min(robotPosX-top,
+                        bottom-robotPosX))
+                + (right-left) + Math.min(robotPosY-left,
+                        right-robotPosY);
+    }
+
+    //The weight of a minimum spanning tree over the dirty tiles, using
+    //the cost of the cheapest walk between them with step costs of 1.3
+    //vertically and 1 horizontally, plus the cost of the walk from the
+    //robot to the nearest dirty tile.
+    //This bound is admissable: the robot has to reach some dirty tile
+    //first, and the rest of its path is a spanning tree of the dirt.
+    //It is consistent: a move changes the distance to the nearest dirt by
+    //at most the step cost, and sucking can only raise the bound.
+    public double spanningTreeBound(int robotPosX, int robotPosY)
+    {
+        if( count == 0 )
+            return 0;
+        double nearest = Double.POSITIVE_INFINITY;
+        for( int i = 0; i < count; i++ )
+            nearest = Math.min(nearest, distance(oracle, rows[i], cols[i],
+                    robotPosX, robotPosY));
+        return treeWeight + nearest;
+    }
+
+    //The cost of the cheapest walk between two tiles.
+    private static double distance(DistanceOracle oracle, int x1, int y1,
+            int x2, int y2)
+    {
+        if( oracle == null )
+            return 1.3*Math.abs(x1-x2) + Math.abs(y1-y2);
+        //An unreachable tile counts as the longest walk there can be,
+        //which keeps the bound finite and the searches' tenths in range.
+        //It is still admissible, as no path cleans that tile at all.
+        return oracle.distance(x1, y1, x2, y2)/10.0;
+    }
+
+    //Prim's algorithm on the complete graph of the first count tiles,
+    //using dist and inTree for its working.
+    private static double spanningTreeWeight(int[] rows, int[] cols,
+            int count, DistanceOracle oracle, double[] dist,
+            boolean[] inTree)
+    {
+        if( count == 0 )
+            return 0;
+        Arrays.fill(inTree, 0, count, false);
+        for( int i = 1; i < count; i++ )
+            dist[i] = distance(oracle, rows[i], cols[i], rows[0], cols[0]);
+        inTree[0] = true;
+        double weight = 0;
+        for( int added = 1; added < count; added++ )
+        {
+            int next = -1;
+            for( int i = 0; i < count; i++ )
+                if( !inTree[i] && (next < 0 || dist[i] < dist[next]) )
+                    next = i;
+            inTree[next] = true;
+            weight += dist[next];
+            for( int i = 0; i < count; i++ )
+                if( !inTree[i] )
+                    dist[i] = Math.min(dist[i], distance(oracle, rows[i],
+                            cols[i], rows[next], cols[next]));
+        }
+        return weight;
+    }
+}
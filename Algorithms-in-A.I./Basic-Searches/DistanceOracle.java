@@ -0,0 +1,219 @@
+/*
+ * File:   DistanceOracle.java
+ * Author: Alain Chen
+ *
+ * This class holds the blocked tiles of a room, furniture the robot can
+ * not enter, and the cost of the cheapest walk between every two tiles
+ * around them. The costs are worked out once per room by a Dijkstra
+ * search from every tile and kept in one char array in tenths, so the
+ * heuristic and the macro actions look a distance up in constant time.
+ *
+ * Tiles are numbered the way Node packs its dirt: tile (x,y) of a room
+ * with cols columns is (x-1)*cols+(y-1).
+ *
+ */
+package BasicAISearches;
+import java.util.Arrays;
+
+public class DistanceOracle {
+
+    //The table takes 2 bytes per pair of tiles, 32 MB at this size.
+    //Walks are also short enough to fit a char.
+    public static final int MAX_TILES = 4096;
+    public static final int UNREACHABLE = Character.MAX_VALUE;
+    //Step costs in tenths.
+    private static final int VERTICAL = 13, HORIZONTAL = 10;
+    //Spanning tree weights by dirt, which depend on the blocked tiles.
+    //Each thread has one cache, for the last room it looked at, and
+    //empties it when it moves on to another room.
+    private static final ThreadLocal<TreeCache> TREE_CACHE =
+            ThreadLocal.withInitial(TreeCache::new);
+
+    private final int rows;
+    private final int cols;
+    private final int tiles;
+    private final long[] blocked;//Packed like dirt.
+    private final char[] dist;//From tile i to tile j at i*tiles+j.
+    private final int hash;
+
+    //blockedTiles holds the row and column of each blocked tile.
+    public DistanceOracle(int rows, int cols, int[][] blockedTiles)
+    {
+        this(rows, cols, pack(rows, cols, blockedTiles));
+    }
+
+    //blocked is a bitmask packed like dirt.
+    public DistanceOracle(int rows, int cols, long[] blocked)
+    {
+        if( rows*cols > MAX_TILES )
+            throw new IllegalArgumentException("Room of " + rows*cols
+                    + " tiles is too large for a distance table (at most "
+                    + MAX_TILES + ")");
+        this.rows = rows;
+        this.cols = cols;
+        tiles = rows*cols;
+        this.blocked = blocked.clone();
+        hash = 31*(31*rows+cols) + Arrays.hashCode(blocked);
+        dist = new char[tiles*tiles];
+        Arrays.fill(dist, (char)UNREACHABLE);
+        int[][] buckets = new int[VERTICAL+1][16];
+        int[] counts = new int[VERTICAL+1];
+        for( int t = 0; t < tiles; t++ )
+            if( !isBlocked(t) )
+                fillFrom(t, buckets, counts);
+    }
+
+    private static long[] pack(int rows, int cols, int[][] blockedTiles)
+    {
+        long[] packed = new long[(rows*cols+63)/64];
+        for( int[] tile : blockedTiles )
+        {
+            if( tile[0] < 1 || tile[0] > rows || tile[1] < 1
+                    || tile[1] > cols )
+                throw new IllegalArgumentException("Tile (" + tile[0] + ","
+                        + tile[1] + ") is outside a " + rows + "x" + cols
+                        + " room");
+            int b = (tile[0]-1)*cols+(tile[1]-1);
+            packed[b>>>6] |= 1L<<b;
+        }
+        return packed;
+    }
+
+    //Dijkstra from one tile, with the labels in buckets by distance. A
+    //label is at most one step above the tile being taken, so one bucket
+    //per distance up to the longest step is enough, used round and round.
+    //A tile whose label was lowered leaves a stale entry behind.
+    private void fillFrom(int source, int[][] buckets, int[] counts)
+    {
+        int row = source*tiles;
+        dist[row+source] = 0;
+        int pending = push(buckets, counts, 0, source, 0);
+        for( int d = 0; pending > 0; d++ )
+        {
+            int k = d % buckets.length;
+            while( counts[k] > 0 )
+            {
+                int t = buckets[k][--counts[k]];
+                pending--;
+                if( dist[row+t] != d )
+                    continue;
+                int x = t/cols, y = t%cols;
+                if( x > 0 )
+                    pending = label(row, t-cols, d+VERTICAL, buckets, 
+                            counts, pending);
+                if( x < rows-1 )
+                    pending = label(row, t+cols, d+VERTICAL, buckets, 
+                            counts, pending);
+                if( y > 0 )
+                    pending = label(row, t-1, d+HORIZONTAL, buckets, 
+                            counts, pending);
+                if( y < cols-1 )
+                    pending = label(row, t+1, d+HORIZONTAL, buckets, 
+                            counts, pending);
+            }
+        }
+    }
+
+    private int label(int row, int t, int d, int[][] buckets, int[] counts,
+            int pending)
+    {
+        if( isBlocked(t) || d >= dist[row+t] )
+            return pending;
+        dist[row+t] = (char)d;
+        return push(buckets, counts, d % buckets.length, t, pending);
+    }
+
+    private static int push(int[][] buckets, int[] counts, int k, int t,
+            int pending)
+    {
+        if( counts[k] == buckets[k].length )
+            buckets[k] = Arrays.copyOf(buckets[k], 2*counts[k]);
+        buckets[k][counts[k]++] = t;
+        return pending+1;
+    }
+
+    public int getRows()
+    {
+        return rows;
+    }
+
+    public int getCols()
+    {
+        return cols;
+    }
+
+    public boolean isBlocked(int x, int y)
+    {
+        return isBlocked((x-1)*cols+(y-1));
+    }
+
+    private boolean isBlocked(int t)
+    {
+        return (blocked[t>>>6] & (1L<<t)) != 0;
+    }
+
+    //The cost in tenths of the cheapest walk between two tiles, or
+    //UNREACHABLE.
+    public int distance(int from, int to)
+    {
+        return dist[from*tiles+to];
+    }
+
+    public int distance(int x1, int y1, int x2, int y2)
+    {
+        return dist[((x1-1)*cols+(y1-1))*tiles + (x2-1)*cols+(y2-1)];
+    }
+
+    public long[] getBlocked()
+    {
+        return blocked.clone();
+    }
+
+    //The blocked tiles without a copy, not to be changed.
+    long[] blockedMask()
+    {
+        return blocked;
+    }
+
+    HeuristicCache treeCache()
+    {
+        TreeCache c = TREE_CACHE.get();
+        if( c.blocked != blocked && !(c.rows == rows && c.cols == cols
+                && Arrays.equals(c.blocked, blocked)) )
+        {
+            c.cache.clear();
+            c.rows = rows;
+            c.cols = cols;
+            c.blocked = blocked;
+        }
+        return c.cache;
+    }
+
+    @Override
+    //Two oracles are equal if their rooms have the same blocked tiles.
+    public boolean equals(Object o)
+    {
+        if( !(o instanceof DistanceOracle) )
+            return false;
+        DistanceOracle d = (DistanceOracle)o;
+        return hash == d.hash && rows == d.rows && cols == d.cols
+                && Arrays.equals(blocked, d.blocked);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    //A thread's cache and the room it holds. The room is kept by its
+    //blocked tiles rather than its oracle, so that the cache does not
+    //keep a distance table alive.
+    private static class TreeCache {
+
+        final HeuristicCache cache = new HeuristicCache(1<<16);
+        int rows;
+        int cols;
+        long[] blocked;
+    }
+}
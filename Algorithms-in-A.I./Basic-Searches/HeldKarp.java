@@ -0,0 +1,228 @@
+/*
+ * File:   HeldKarp.java
+ * Author: Alain Chen
+ *
+ * This class solves a room exactly with the Held-Karp dynamic program.
+ * The cheapest way between two tiles costs the weighted Manhattan
+ * distance, or in a room with blocked tiles what its DistanceOracle
+ * gives, and a solution is an order of the dirty tiles with one suck on
+ * each. For every set of dirty tiles and every
+ * tile in it, the program works out the cheapest way to clean that set
+ * from the start and end on that tile.
+ *
+ * The sets are handled in layers by size, and each layer only needs the
+ * one before it. A layer is one int array of costs in tenths and one
+ * byte array of the tile cleaned before, indexed by the rank of the set
+ * among the sets of its size, times the number of dirty tiles. The sets
+ * of a layer are split into ranges that are filled as fork/join tasks.
+ *
+ * The work grows with the number of dirty tiles alone, as n^2 2^n. Past
+ * about ten tiles it is more than A* needs on open rooms: on 12x12
+ * rooms the program takes 0.8 ms to A*'s 0.1 ms with 12 dirty tiles,
+ * and 220 ms to 1.4 ms with 20. Its time does not depend on where the
+ * tiles are, though, so it stays an exact baseline up to MAX_DIRT.
+ *
+ */
+package BasicAISearches;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class HeldKarp {
+
+    //The byte arrays of every layer are kept for the path, which takes
+    //the number of dirty tiles times 2 to the number of dirty tiles bytes.
+    public static final int MAX_DIRT = 22;
+    //Ranges of at most this many sets are filled by one task.
+    private static final int GRAIN = 1024;
+    private static final int VERTICAL = 13, HORIZONTAL = 10;
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    private final ForkJoinPool pool;
+    private int n;//Number of dirty tiles.
+    private int[] dist;//Between dirty tiles, the start last.
+    private int[][] choose;
+    private long entries;
+
+    public HeldKarp(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    //Number of (set, last tile) costs worked out by the last solve.
+    public long getEntries()
+    {
+        return entries;
+    }
+
+    //Returns the goal node of a cheapest solution, or null if there is
+    //none. Rooms with more than MAX_DIRT dirty tiles are refused.
+    public Node solve(Node root)
+    {
+        long[] dirt = root.getDirt();
+        int dirtWidth = root.getDirtWidth();
+        n = 0;
+        for( int w = 0; w < dirt.length; w++ )
+            n += Long.bitCount(dirt[w]);
+        if( n > MAX_DIRT )
+            throw new IllegalArgumentException("Too many dirty tiles: " + n
+                    + " (at most " + MAX_DIRT + ")");
+        entries = 0;
+        if( n == 0 )
+            return root;
+
+        //Rows and columns of the dirty tiles, then the start.
+        int[] row = new int[n+1], col = new int[n+1];
+        int t = 0;
+        for( int w = 0; w < dirt.length; w++ )
+            for( long bits = dirt[w]; bits != 0; bits &= bits-1 )
+            {
+                int b = (w<<6) + Long.numberOfTrailingZeros(bits);
+                row[t] = b/(dirtWidth-1)+1;
+                col[t++] = b%(dirtWidth-1)+1;
+            }
+        row[n] = root.getRobotPosX();
+        col[n] = root.getRobotPosY();
+        DistanceOracle oracle = root.getOracle();
+        dist = new int[(n+1)*(n+1)];
+        for( int i = 0; i <= n; i++ )
+            for( int j = 0; j <= n; j++ )
+                dist[i*(n+1)+j] = oracle != null 
+                        ? oracle.distance(row[i], col[i], row[j], col[j])
+                        : VERTICAL*Math.abs(row[i]-row[j])
+                            + HORIZONTAL*Math.abs(col[i]-col[j]);
+        //Dirt the start can not reach can not be cleaned.
+        for( int j = 0; j < n; j++ )
+            if( dist[n*(n+1)+j] == DistanceOracle.UNREACHABLE )
+                return null;
+        choose = new int[n+1][n+1];
+        for( int i = 0; i <= n; i++ )
+        {
+            choose[i][0] = 1;
+            for( int k = 1; k <= i; k++ )
+                choose[i][k] = choose[i-1][k-1] + choose[i-1][k];
+        }
+
+        //Sets of one tile: straight from the start. The rank of {j} is j.
+        byte[][] before = new byte[n+1][];
+        int[] cost = new int[n*n];
+        before[1] = new byte[n*n];
+        for( int j = 0; j < n; j++ )
+        {
+            cost[j*n+j] = dist[n*(n+1)+j];
+            before[1][j*n+j] = -1;
+        }
+        entries = n;
+        for( int k = 2; k <= n; k++ )
+        {
+            int sets = choose[n][k];
+            int[] next = new int[sets*n];
+            before[k] = new byte[sets*n];
+            pool.invoke(new LayerTask(k, 0, sets, cost, next, before[k]));
+            entries += (long)sets*k;
+            cost = next;
+        }
+
+        //The full set has rank 0 in the last layer.
+        int last = 0;
+        for( int j = 1; j < n; j++ )
+            if( cost[j] < cost[last] )
+                last = j;
+        int[] order = new int[n];
+        int set = (1<<n)-1;
+        for( int k = n; k >= 1; k-- )
+        {
+            order[k-1] = last;
+            int prev = before[k][rank(set)*n+last];
+            set &= ~(1<<last);
+            last = prev;
+        }
+
+        //Walk to each tile in order and suck.
+        Node node = root;
+        for( int i = 0; i < n; i++ )
+            node = node.travelTo(row[order[i]], col[order[i]])
+                    .successor(Node.SUCK);
+        return node;
+    }
+
+    //Rank of a set among the sets of its size, in increasing order.
+    private int rank(int set)
+    {
+        int r = 0;
+        for( int i = 1; set != 0; set &= set-1, i++ )
+            r += choose[Integer.numberOfTrailingZeros(set)][i];
+        return r;
+    }
+
+    //The set of size k with the given rank.
+    private int unrank(int r, int k)
+    {
+        int set = 0;
+        for( int p = n-1; k > 0; p-- )
+            if( choose[p][k] <= r )
+            {
+                set |= 1<<p;
+                r -= choose[p][k];
+                k--;
+            }
+        return set;
+    }
+
+    //Fills the sets of size k with ranks from lo to hi.
+    private class LayerTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        final int k, lo, hi;
+        final int[] cost, next;
+        final byte[] before;
+
+        LayerTask(int k, int lo, int hi, int[] cost, int[] next,
+                byte[] before)
+        {
+            this.k = k;
+            this.lo = lo;
+            this.hi = hi;
+            this.cost = cost;
+            this.next = next;
+            this.before = before;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if( hi-lo > GRAIN )
+            {
+                int mid = (lo+hi) >>> 1;
+                invokeAll(new LayerTask(k, lo, mid, cost, next, before),
+                        new LayerTask(k, mid, hi, cost, next, before));
+                return;
+            }
+            int set = unrank(lo, k);
+            for( int r = lo; r < hi; r++ )
+            {
+                for( int s = set; s != 0; s &= s-1 )
+                {
+                    int j = Integer.numberOfTrailingZeros(s);
+                    int rest = set & ~(1<<j);
+                    int base = rank(rest)*n;
+                    int best = INFINITE, from = -1;
+                    for( int u = rest; u != 0; u &= u-1 )
+                    {
+                        int i = Integer.numberOfTrailingZeros(u);
+                        int c = cost[base+i] + dist[i*(n+1)+j];
+                        if( c < best )
+                        {
+                            best = c;
+                            from = i;
+                        }
+                    }
+                    next[r*n+j] = best;
+                    before[r*n+j] = (byte)from;
+                }
+                //The next set of the same size in increasing order.
+                int low = set & -set, ripple = set + low;
+                set = (((ripple ^ set) >>> 2) / low) | ripple;
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/* 
+ * File:   HeuristicCache.java
+ * Author: Alain Chen
+ * 
+ * This class is a fixed-size cache of heuristic values keyed on a dirt
+ * bitmask and the room width. It is direct-mapped: a new value simply
+ * replaces whatever was in its slot, so the cache never grows.
+ * It is not thread-safe, each thread should use its own cache.
+ * 
+ */
+package BasicAISearches;
+import java.util.Arrays;
+
+public class HeuristicCache {
+
+    private int words;
+    private int stride;//Longs per slot, dirt words plus width.
+    private final int mask;
+    private long[] keys;
+    private double[] values;
+    private long lookups;
+    private long hits;
+
+    //size is the number of slots, rounded up to a power of two.
+    public HeuristicCache(int size)
+    {
+        int capacity = 1;
+        while( capacity < size )
+            capacity <<= 1;
+        mask = capacity-1;
+        resize(1);
+    }
+
+    public long getLookups()
+    {
+        return lookups;
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    //Returns the cached value, or NaN if it is not in the cache.
+    public double get(long[] dirt, int dirtWidth)
+    {
+        lookups++;
+        if( dirt.length != words )
+            return Double.NaN;
+        int slot = StateTable.hash(dirt, dirtWidth) & mask;
+        int base = slot*stride;
+        //Widths are stored off by one so that 0 marks an empty slot.
+        if( keys[base+words] != dirtWidth+1 )
+            return Double.NaN;
+        for( int w = 0; w < words; w++ )
+            if( keys[base+w] != dirt[w] )
+                return Double.NaN;
+        hits++;
+        return values[slot];
+    }
+
+    public void put(long[] dirt, int dirtWidth, double value)
+    {
+        //Bitmasks of another length mean another room size,
+        //so start over with slots that fit them.
+        if( dirt.length != words )
+            resize(dirt.length);
+        int slot = StateTable.hash(dirt, dirtWidth) & mask;
+        int base = slot*stride;
+        System.arraycopy(dirt, 0, keys, base, words);
+        keys[base+words] = dirtWidth+1;
+        values[slot] = value;
+    }
+
+    //Empties every slot.
+    public void clear()
+    {
+        Arrays.fill(keys, 0);
+    }
+
+    private void resize(int newWords)
+    {
+        words = newWords;
+        stride = words+1;
+        keys = new long[(mask+1)*stride];
+        values = new double[mask+1];
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * File:   IncrementalPlanner.java
+ * Author: Alain Chen
+ *
+ * This class plans paths for a robot whose room keeps changing, in the
+ * manner of D* Lite: it searches backwards from the clean states towards
+ * the robot and keeps its search between queries.
+ *
+ * A state's cost to the goal does not depend on where the robot starts,
+ * and new dirt does not change the cost of any state without that dirt,
+ * since dirt never comes back once sucked. So every state the search has
+ * closed keeps its exact cost for good, and a new query goes on from
+ * where the last search stopped. Dirt on a tile that was never dirty
+ * before adds predecessors only to the closed states with the robot on
+ * that tile, and only those are reopened.
+ *
+ * The heuristic is a lower bound on the cost from the robot's state to
+ * another state: the robot has to get there and pass over every tile it
+ * cleans on the way, so it covers the rows and columns between them and
+ * walks through any three of those tiles in some order. Each of these
+ * bounds is a cheapest walk in a simpler problem, so between any three
+ * states they obey the triangle inequality. As in D* Lite, the keys on
+ * the fringe are then not worked out again when the robot moves. The
+ * bound from the old robot state to the new one is added to an offset,
+ * km, that every key made from then on includes, which keeps the old
+ * keys no higher than the new ones. A record whose key turns out too
+ * low when it comes to the top is given its new key and sent down.
+ *
+ * States with dirt the robot's state does not have can not be reached.
+ * They are parked off the fringe when they come up, and are only looked
+ * at again when dirt appears.
+ *
+ */
+package BasicAISearches;
+import java.util.Arrays;
+
+public class IncrementalPlanner {
+
+    //Step costs in tenths.
+    private static final int VERTICAL = 13, HORIZONTAL = 10;
+    //Heap index of a record that is parked.
+    private static final int PARKED = -2;
+
+    private final int dirtWidth;
+    private final int dirtHeight;
+    private final int words;
+    //A record per state. Its cost is the cost to a goal, its parent the
+    //next state on the way and its action the one that leads there.
+    private final NodeArena arena;
+    private final StateTable index;
+    private final long[] everDirty;//Tiles that were dirty in any query.
+    //The fringe, a binary heap of records by key and then highest cost.
+    //Each record knows its place in it, so a record given a cheaper path
+    //is moved up in place.
+    private int[] heap;
+    private int heapSize;
+    private int[] heapIndex;//By record, -1 if not on the fringe.
+    private long[] keys;//By record, the key it has on the fringe.
+    private int[] parked;//Records that can not be reached for now.
+    private int parkedCount;
+    private long km;//Sum of the bounds between successive robot states.
+    private int[][] closedAt;//Closed records by robot tile.
+    private int[] closedCount;
+    private long[] robotDirt;//The current query.
+    private int robotX;
+    private int robotY;
+    private final long[] state;
+    //The tiles cleaned between the two states of a bound, and their
+    //distances from the first and to the second.
+    private final int[] tileRow, tileCol, start, end, near;
+    //By record, its bound from the robot's state in the query it was
+    //worked out in. A new query starts when plan is called.
+    private int[] bounds;
+    private int[] boundQuery;
+    private int query;
+    private long nodesExpanded;
+
+    public IncrementalPlanner(int dirtWidth, int dirtHeight)
+    {
+        this.dirtWidth = dirtWidth;
+        this.dirtHeight = dirtHeight;
+        int cells = (dirtWidth-1)*(dirtHeight-1);
+        words = (cells+63)/64;
+        arena = new NodeArena(words, 1024);
+        index = new StateTable(words);
+        everDirty = new long[words];
+        heap = new int[1024];
+        heapIndex = new int[1024];
+        keys = new long[1024];
+        parked = new int[64];
+        closedAt = new int[cells][];
+        closedCount = new int[cells];
+        state = new long[words];
+        tileRow = new int[cells];
+        tileCol = new int[cells];
+        start = new int[cells];
+        end = new int[cells];
+        near = new int[cells];
+        bounds = new int[1024];
+        boundQuery = new int[1024];
+
+        //Every clean state is a goal. A key of 0 is below any real one.
+        for( int x = 1; x < dirtHeight; x++ )
+            for( int y = 1; y < dirtWidth; y++ )
+            {
+                int id = arena.add(state, x*dirtWidth+y, 0, 0, -1, -1);
+                index.put(state, x*dirtWidth+y, id);
+                grow(id);
+                push(id, 0);
+            }
+    }
+
+    //Expansions made by the search so far, over all queries.
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    //Number of states with a known or tentative cost.
+    public int getStatesGenerated()
+    {
+        return arena.size();
+    }
+
+    //Returns the goal node of a cheapest path from the given node,
+    //reached by replaying the actions from it. Rooms with blocked tiles
+    //are refused.
+    public Node plan(Node start)
+    {
+        if( start.getOracle() != null )
+            throw new IllegalArgumentException(
+                    "Rooms with blocked tiles are not supported");
+        long[] dirt = start.getDirt();
+        int x = start.getRobotPosX(), y = start.getRobotPosY();
+        boolean dirtCameBack = false;
+        if( robotDirt != null )
+        {
+            km += bound(robotDirt, robotX, robotY, dirt, x, y);
+            for( int w = 0; w < words; w++ )
+                dirtCameBack |= (dirt[w] & ~robotDirt[w]) != 0;
+        }
+        robotDirt = dirt.clone();
+        query++;
+        robotX = x;
+        robotY = y;
+        addDirt(robotDirt);
+        if( dirtCameBack )
+            unpark();
+
+        int id = search(start.position());
+        if( id < 0 )
+            return null;
+        Node n = start;
+        for( ; arena.getParent(id) >= 0; id = arena.getParent(id) )
+            n = n.successor(arena.getAction(id));
+        return n;
+    }
+
+    //Makes the tiles dirty in the query part of the search. Closed states
+    //with the robot on a newly dirty tile get a new predecessor, the
+    //state before the robot sucked there.
+    private void addDirt(long[] dirt)
+    {
+        for( int w = 0; w < words; w++ )
+        {
+            long added = dirt[w] & ~everDirty[w];
+            everDirty[w] |= added;
+            for( ; added != 0; added &= added-1 )
+            {
+                int b = (w<<6) + Long.numberOfTrailingZeros(added);
+                for( int i = 0; i < closedCount[b]; i++ )
+                {
+                    int id = closedAt[b][i];
+                    arena.getDirt(id, state);
+                    state[b>>>6] |= 1L<<b;
+                    relax(state, arena.getPosition(id), arena.getCost(id),
+                            id, Node.SUCK);
+                }
+            }
+        }
+    }
+
+    //Puts the parked records the robot can reach again back on the
+    //fringe.
+    private void unpark()
+    {
+        int kept = 0;
+        for( int i = 0; i < parkedCount; i++ )
+        {
+            int id = parked[i];
+            arena.getDirt(id, state);
+            if( reachable(state) )
+                push(id, key(id, state));
+            else
+                parked[kept++] = id;
+        }
+        parkedCount = kept;
+    }
+
+    //Backward A* until the record of the robot's state is closed.
+    //Returns that record, or -1 if it can not reach a goal.
+    private int search(int position)
+    {
+        int target = index.get(robotDirt, position);
+        if( target >= 0 && arena.isClosed(target) )
+            return target;
+        while( heapSize > 0 )
+        {
+            int id = heap[0];
+            arena.getDirt(id, state);
+            if( !reachable(state) )
+            {
+                pop();
+                park(id);
+                continue;
+            }
+            //A key from before the robot moved may be too low.
+            long key = key(id, state);
+            if( keys[id] < key )
+            {
+                keys[id] = key;
+                siftDown(0);
+                continue;
+            }
+            pop();
+            close(id);
+            //Expanded even if it is the robot's state, since a closed
+            //record is never expanded later.
+            nodesExpanded++;
+            expand(id);
+            arena.getDirt(id, state);
+            if( arena.getPosition(id) == position
+                    && Arrays.equals(state, robotDirt) )
+                return id;
+        }
+        return -1;
+    }
+
+    private void close(int id)
+    {
+        arena.setClosed(id, true);
+        int p = arena.getPosition(id);
+        int b = (p/dirtWidth-1)*(dirtWidth-1)+(p%dirtWidth-1);
+        if( closedAt[b] == null )
+            closedAt[b] = new int[16];
+        else if( closedCount[b] == closedAt[b].length )
+            closedAt[b] = Arrays.copyOf(closedAt[b], 2*closedCount[b]);
+        closedAt[b][closedCount[b]++] = id;
+    }
+
+    //Generates the predecessors of a closed record.
+    private void expand(int id)
+    {
+        arena.getDirt(id, state);
+        int p = arena.getPosition(id), g = arena.getCost(id);
+        int x = p/dirtWidth, y = p%dirtWidth;
+        //The robot came from a neighbour, moving towards this tile.
+        if( x > 1 )
+            relax(state, p-dirtWidth, g+VERTICAL, id, Node.DOWN);
+        if( x < dirtHeight-1 )
+            relax(state, p+dirtWidth, g+VERTICAL, id, Node.UP);
+        if( y > 1 )
+            relax(state, p-1, g+HORIZONTAL, id, Node.RIGHT);
+        if( y < dirtWidth-1 )
+            relax(state, p+1, g+HORIZONTAL, id, Node.LEFT);
+        //Or it sucked here, if this tile can be dirty.
+        int b = (x-1)*(dirtWidth-1)+(y-1);
+        if( (state[b>>>6] & (1L<<b)) == 0
+                && (everDirty[b>>>6] & (1L<<b)) != 0 )
+        {
+            state[b>>>6] |= 1L<<b;
+            relax(state, p, g, id, Node.SUCK);
+            state[b>>>6] &= ~(1L<<b);
+        }
+    }
+
+    //Offers a path of cost g through next to the state (dirt, pos).
+    private void relax(long[] dirt, int pos, int g, int next, int act)
+    {
+        int id = index.get(dirt, pos);
+        if( id < 0 )
+        {
+            id = arena.add(dirt, pos, g, 0, next, act);
+            index.put(dirt, pos, id);
+            grow(id);
+            heapIndex[id] = -1;
+            if( reachable(dirt) )
+                push(id, key(id, dirt));
+            else
+                park(id);
+            return;
+        }
+        if( arena.isClosed(id) || g >= arena.getCost(id) )
+            return;
+        arena.setPath(id, g, next, act);
+        //A parked record gets its key when it is put back.
+        if( heapIndex[id] >= 0 )
+        {
+            keys[id] = Math.min(keys[id], key(id, dirt));
+            siftUp(heapIndex[id]);
+        }
+    }
+
+    private long key(int id, long[] dirt)
+    {
+        if( boundQuery[id] != query )
+        {
+            int pos = arena.getPosition(id);
+            bounds[id] = bound(robotDirt, robotX, robotY, dirt,
+                    pos/dirtWidth, pos%dirtWidth);
+            boundQuery[id] = query;
+        }
+        return arena.getCost(id) + km + bounds[id];
+    }
+
+    //Whether the robot's state has all the dirt of the given state.
+    private boolean reachable(long[] dirt)
+    {
+        for( int w = 0; w < words; w++ )
+            if( (dirt[w] & ~robotDirt[w]) != 0 )
+                return false;
+        return true;
+    }
+
+    private void park(int id)
+    {
+        if( parkedCount == parked.length )
+            parked = Arrays.copyOf(parked, 2*parkedCount);
+        parked[parkedCount++] = id;
+        heapIndex[id] = PARKED;
+    }
+
+    //A lower bound on the cost from state (from, fx, fy) to state
+    //(to, tx, ty), leaving aside dirt the first state does not have.
+    //The robot has to pass over every tile it cleans on the way, so it
+    //has to reach the rows and columns at the edges of those tiles, and
+    //it has to visit any three of them in some order.
+    private int bound(long[] from, int fx, int fy, long[] to, int tx,
+            int ty)
+    {
+        int top = Math.min(fx, tx), bottom = Math.max(fx, tx);
+        int left = Math.min(fy, ty), right = Math.max(fy, ty);
+        int m = 0;
+        for( int w = 0; w < words; w++ )
+            for( long cleaned = from[w] & ~to[w]; cleaned != 0;
+                    cleaned &= cleaned-1 )
+            {
+                int b = (w<<6) + Long.numberOfTrailingZeros(cleaned);
+                int x = b/(dirtWidth-1)+1, y = b%(dirtWidth-1)+1;
+                top = Math.min(top, x);
+                bottom = Math.max(bottom, x);
+                left = Math.min(left, y);
+                right = Math.max(right, y);
+                tileRow[m] = x;
+                tileCol[m] = y;
+                start[m] = distance(fx, fy, x, y);
+                end[m++] = distance(x, y, tx, ty);
+            }
+        int best = VERTICAL*span(fx, tx, top, bottom)
+                + HORIZONTAL*span(fy, ty, left, right);
+        //Repeating a tile covers walks through one or two of them.
+        for( int i = 0; i < m; i++ )
+        {
+            for( int k = i; k < m; k++ )
+                near[k] = distance(tileRow[i], tileCol[i], tileRow[k],
+                        tileCol[k]);
+            for( int j = i; j < m; j++ )
+            {
+                int ij = near[j];
+                for( int k = j; k < m; k++ )
+                {
+                    int ik = near[k];
+                    int jk = distance(tileRow[j], tileCol[j], tileRow[k],
+                            tileCol[k]);
+                    int walk = Math.min(
+                            Math.min(start[i] + ij + jk + end[k],
+                                    start[i] + ik + jk + end[j]),
+                            Math.min(
+                            Math.min(start[j] + ij + ik + end[k],
+                                    start[j] + jk + ik + end[i]),
+                            Math.min(start[k] + ik + ij + end[j],
+                                    start[k] + jk + ij + end[i])));
+                    best = Math.max(best, walk);
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int distance(int x1, int y1, int x2, int y2)
+    {
+        return VERTICAL*Math.abs(x1-x2) + HORIZONTAL*Math.abs(y1-y2);
+    }
+
+    //The shortest walk on a line from a to b that reaches lo and hi.
+    private static int span(int a, int b, int lo, int hi)
+    {
+        return hi-lo + Math.min(a-lo + hi-b, hi-a + b-lo);
+    }
+
+    //Makes room for record id in the arrays kept by record.
+    private void grow(int id)
+    {
+        if( id < heapIndex.length )
+            return;
+        heapIndex = Arrays.copyOf(heapIndex, 2*id);
+        keys = Arrays.copyOf(keys, 2*id);
+        bounds = Arrays.copyOf(bounds, 2*id);
+        boundQuery = Arrays.copyOf(boundQuery, 2*id);
+    }
+
+    private void push(int id, long key)
+    {
+        if( heapSize == heap.length )
+            heap = Arrays.copyOf(heap, 2*heapSize);
+        keys[id] = key;
+        heap[heapSize] = id;
+        heapIndex[id] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private void pop()
+    {
+        heapIndex[heap[0]] = -1;
+        heap[0] = heap[--heapSize];
+        if( heapSize > 0 )
+        {
+            heapIndex[heap[0]] = 0;
+            siftDown(0);
+        }
+    }
+
+    private boolean less(int a, int b)
+    {
+        return keys[a] != keys[b] ? keys[a] < keys[b]
+                : arena.getCost(a) > arena.getCost(b);
+    }
+
+    private void siftUp(int i)
+    {
+        int id = heap[i];
+        while( i > 0 )
+        {
+            int parent = (i-1)/2;
+            if( !less(id, heap[parent]) )
+                break;
+            heap[i] = heap[parent];
+            heapIndex[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = id;
+        heapIndex[id] = i;
+    }
+
+    private void siftDown(int i)
+    {
+        int id = heap[i];
+        while( true )
+        {
+            int child = 2*i+1;
+            if( child >= heapSize )
+                break;
+            if( child+1 < heapSize && less(heap[child+1], heap[child]) )
+                child++;
+            if( !less(heap[child], id) )
+                break;
+            heap[i] = heap[child];
+            heapIndex[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = id;
+        heapIndex[id] = i;
+    }
+}
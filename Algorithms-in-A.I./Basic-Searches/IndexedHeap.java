@@ -0,0 +1,139 @@
+/* 
+ * File:   IndexedHeap.java
+ * Author: Alain Chen
+ * 
+ * This class is a binary min-heap of nodes ordered by f-score,
+ * then by highest path cost, as Node.compareTo orders them.
+ * Every node remembers its own index in the heap, so a node whose
+ * path cost went down can be moved up in place (decrease-key)
+ * instead of being added a second time.
+ * 
+ */
+package BasicAISearches;
+import java.util.Arrays;
+
+public class IndexedHeap implements OpenList {
+
+    private Node[] heap;
+    private int size;
+
+    public IndexedHeap()
+    {
+        heap = new Node[1024];
+        size = 0;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+    }
+
+    public void add(Node n)
+    {
+        if( size == heap.length )
+            heap = Arrays.copyOf(heap, 2*size);
+        heap[size] = n;
+        n.heapIndex = size;
+        size++;
+        siftUp(n.heapIndex);
+    }
+
+    //Removes and returns the node with the lowest f-score.
+    public Node poll()
+    {
+        Node top = heap[0];
+        size--;
+        if( size > 0 )
+        {
+            heap[0] = heap[size];
+            heap[0].heapIndex = 0;
+            siftDown(0);
+        }
+        heap[size] = null;
+        top.heapIndex = -1;
+        return top;
+    }
+
+    public Node peek()
+    {
+        return heap[0];
+    }
+
+    //Restores the heap after the f-score of a node in it went down.
+    public void decreaseKey(Node n)
+    {
+        siftUp(n.heapIndex);
+    }
+
+    public void remove(Node n)
+    {
+        int i = n.heapIndex;
+        size--;
+        if( i < size )
+        {
+            heap[i] = heap[size];
+            heap[i].heapIndex = i;
+            siftUp(i);
+            siftDown(heap[i].heapIndex);
+        }
+        heap[size] = null;
+        n.heapIndex = -1;
+    }
+
+    public boolean contains(Node n)
+    {
+        return n.heapIndex >= 0 && n.heapIndex < size && heap[n.heapIndex] == n;
+    }
+
+    private void siftUp(int i)
+    {
+        Node n = heap[i];
+        while( i > 0 )
+        {
+            int parent = (i-1)/2;
+            if( !less(n, heap[parent]) )
+                break;
+            heap[i] = heap[parent];
+            heap[i].heapIndex = i;
+            i = parent;
+        }
+        heap[i] = n;
+        n.heapIndex = i;
+    }
+
+    private void siftDown(int i)
+    {
+        Node n = heap[i];
+        while( true )
+        {
+            int child = 2*i+1;
+            if( child >= size )
+                break;
+            if( child+1 < size && less(heap[child+1], heap[child]) )
+                child++;
+            if( !less(heap[child], n) )
+                break;
+            heap[i] = heap[child];
+            heap[i].heapIndex = i;
+            i = child;
+        }
+        heap[i] = n;
+        n.heapIndex = i;
+    }
+
+    private static boolean less(Node a, Node b)
+    {
+        return a.compareTo(b) < 0;
+    }
+}
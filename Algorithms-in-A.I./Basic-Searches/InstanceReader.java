@@ -0,0 +1,91 @@
+/*
+ * File:   InstanceReader.java
+ * Author: Alain Chen
+ *
+ * This class reads vacuum world instances from a text file, one at a
+ * time, so a file of any size can be solved without holding it all.
+ * Each line is one instance:
+ *
+ *     id rows cols startRow startCol row,col row,col ... xrow,col ...
+ *
+ * followed by the dirty tiles, and the blocked tiles marked with an x.
+ * Blank lines and lines starting with # are skipped.
+ *
+ */
+package BasicAISearches;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+public class InstanceReader implements AutoCloseable {
+
+    private final BufferedReader in;
+    private int lineNumber;
+
+    public InstanceReader(Reader in)
+    {
+        this.in = in instanceof BufferedReader ? (BufferedReader)in
+                : new BufferedReader(in);
+    }
+
+    //Returns the next instance, or null at the end of the file.
+    //A malformed line throws an IllegalArgumentException with its number.
+    public RoomInstance next() throws IOException
+    {
+        String line;
+        while( (line = in.readLine()) != null )
+        {
+            lineNumber++;
+            line = line.trim();
+            if( line.isEmpty() || line.startsWith("#") )
+                continue;
+            try
+            {
+                return parse(line);
+            }
+            catch( IllegalArgumentException e )
+            {
+                throw new IllegalArgumentException("Line " + lineNumber 
+                        + ": " + e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+    private static RoomInstance parse(String line)
+    {
+        String[] fields = line.split("\\s+");
+        if( fields.length < 5 )
+            throw new IllegalArgumentException(
+                    "Expected id rows cols startRow startCol");
+        ArrayList<int[]> dirty = new ArrayList<int[]>();
+        ArrayList<int[]> blocked = new ArrayList<int[]>();
+        for( int i = 5; i < fields.length; i++ )
+        {
+            if( fields[i].startsWith("x") )
+                blocked.add(tile(fields[i].substring(1)));
+            else
+                dirty.add(tile(fields[i]));
+        }
+        return new RoomInstance(fields[0], Integer.parseInt(fields[1]),
+                Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+                Integer.parseInt(fields[4]), dirty.toArray(new int[0][]),
+                blocked.toArray(new int[0][]));
+    }
+
+    private static int[] tile(String field)
+    {
+        int comma = field.indexOf(',');
+        if( comma < 0 )
+            throw new IllegalArgumentException("Bad tile " + field);
+        return new int[] { Integer.parseInt(field.substring(0, comma)),
+            Integer.parseInt(field.substring(comma+1)) };
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+}
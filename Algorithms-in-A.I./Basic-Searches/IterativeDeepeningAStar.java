@@ -0,0 +1,176 @@
+/*
+ * File:   IterativeDeepeningAStar.java
+ * Author: Alain Chen
+ *
+ * This class implements iterative deepening A* (IDA*).
+ * Each iteration is a depth-first search cut off where the f-score passes
+ * the bound, and the next bound is the lowest f-score that was cut off.
+ * The search works on one mutable state: a move is applied before going
+ * down and undone when coming back, and the actions taken are kept in a
+ * preallocated stack. The dirt summary for the heuristic is an editable
+ * one, so a suck drops its tile in place and backing up puts it back.
+ * No objects are made while searching.
+ *
+ */
+package BasicAISearches;
+import java.util.Arrays;
+
+public class IterativeDeepeningAStar {
+
+    //Moves in the order they are tried, the same order IDS takes them.
+    private static final int[] MOVES =
+        { Node.DOWN, Node.RIGHT, Node.LEFT, Node.UP };
+    private static final double EPS = 1e-9;
+
+    private final Node root;
+    private final int dirtWidth;
+    private final int dirtHeight;
+    private final long[] dirt;
+    private DirtSummary summary;
+    private int robotPosX;
+    private int robotPosY;
+    private byte[] path;
+    private int pathLength;
+    private double bound;
+    private double nextBound;
+    private long nodesExpanded;
+
+    //Rooms with blocked tiles are refused.
+    public IterativeDeepeningAStar(Node root)
+    {
+        if( root.getOracle() != null )
+            throw new IllegalArgumentException(
+                    "Rooms with blocked tiles are not supported");
+        this.root = root;
+        dirtWidth = root.getDirtWidth();
+        dirtHeight = root.getDirtHeight();
+        dirt = new long[root.getDirt().length];
+        path = new byte[64];
+    }
+
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    //Returns the goal node of a cheapest solution, or null if there is none.
+    public Node search()
+    {
+        System.arraycopy(root.getDirt(), 0, dirt, 0, dirt.length);
+        robotPosX = root.getRobotPosX();
+        robotPosY = root.getRobotPosY();
+        summary = DirtSummary.of(dirt, dirtWidth).editable();
+        pathLength = 0;
+        nodesExpanded = 0;
+        bound = root.fScore();
+        while( true )
+        {
+            //A path within the bound has at most one move per unit of cost
+            //plus one suck per dirty tile.
+            int dirty = 0;
+            for( int w = 0; w < dirt.length; w++ )
+                dirty += Long.bitCount(dirt[w]);
+            int maxLength = (int)(bound+EPS) + dirty + 1;
+            if( path.length < maxLength )
+                path = Arrays.copyOf(path, maxLength);
+
+            nextBound = Double.POSITIVE_INFINITY;
+            if( boundedSearch(0, -1) )
+                return rebuildPath();
+            if( nextBound == Double.POSITIVE_INFINITY )
+                return null;
+            bound = nextBound;
+        }
+    }
+
+    //Depth-first search below the current state.
+    //lastMove is the move that reached it, or -1 after a suck.
+    private boolean boundedSearch(double g, int lastMove)
+    {
+        double f = g + Node.heuristicFunction(summary, dirt, dirtWidth,
+                robotPosX, robotPosY);
+        if( f > bound+EPS )
+        {
+            if( f < nextBound )
+                nextBound = f;
+            return false;
+        }
+        if( isClean() )
+            return true;
+        nodesExpanded++;
+
+        int b = (robotPosX-1)*(dirtWidth-1)+(robotPosY-1);
+        if( (dirt[b>>>6] & (1L<<b)) != 0 )
+        {
+            //Sucking is free and the tile has to be cleaned at some point,
+            //so it is the only action worth trying here.
+            dirt[b>>>6] &= ~(1L<<b);
+            summary.remove(robotPosX, robotPosY, dirt, dirtWidth);
+            path[pathLength++] = Node.SUCK;
+            if( boundedSearch(g, -1) )
+                return true;
+            pathLength--;
+            summary.restore();
+            dirt[b>>>6] |= 1L<<b;
+            return false;
+        }
+
+        for( int i = 0; i < MOVES.length; i++ )
+        {
+            int a = MOVES[i];
+            //Undoing the last move leads back to the same state.
+            if( a == Node.DOWN+Node.UP-lastMove )
+                continue;
+            int x = robotPosX, y = robotPosY;
+            double cost;
+            if( a == Node.UP && x > 1 )
+            {
+                robotPosX--;
+                cost = 1.3;
+            }
+            else if( a == Node.DOWN && x < dirtHeight-1 )
+            {
+                robotPosX++;
+                cost = 1.3;
+            }
+            else if( a == Node.LEFT && y > 1 )
+            {
+                robotPosY--;
+                cost = 1;
+            }
+            else if( a == Node.RIGHT && y < dirtWidth-1 )
+            {
+                robotPosY++;
+                cost = 1;
+            }
+            else
+                continue;
+
+            path[pathLength++] = (byte)a;
+            if( boundedSearch(g+cost, a) )
+                return true;
+            pathLength--;
+            robotPosX = x;
+            robotPosY = y;
+        }
+        return false;
+    }
+
+    private boolean isClean()
+    {
+        for( int w = 0; w < dirt.length; w++ )
+            if( dirt[w] != 0 )
+                return false;
+        return true;
+    }
+
+    //Replay the actions on the stack from the root, so the solution
+    //can be printed like any other.
+    private Node rebuildPath()
+    {
+        Node n = root;
+        for( int i = 0; i < pathLength; i++ )
+            n = n.successor(path[i]);
+        return n;
+    }
+}
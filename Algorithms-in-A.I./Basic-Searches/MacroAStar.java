@@ -0,0 +1,178 @@
+/*
+ * File:   MacroAStar.java
+ * Author: Alain Chen
+ *
+ * This class runs A* with macro actions. Each action goes straight to a
+ * dirty tile and sucks it, at the weighted Manhattan distance, which is
+ * the cheapest way there in a room without walls. A state is the
+ * dirt left and the tile last cleaned, so the depth of the search is the
+ * number of dirty tiles and the branching is the number left, however
+ * large the room is.
+ *
+ * In a room with blocked tiles the cost of an action is looked up in the
+ * room's DistanceOracle instead, and the robot walks around them.
+ *
+ * The heuristic of a child is worked out from the dirt summary of its
+ * parent with the child's tile dropped, as a sucking Node does. A record
+ * keeps the spanning tree weight of its dirt in the arena's spare int,
+ * so the parent's summary is loaded once per expansion from its dirt.
+ *
+ * Every solution is an order of the dirty tiles, so the macro actions
+ * lose none of the optimal ones. Node's heuristic is consistent for the
+ * single steps, so it is for the macro actions too, and the first goal
+ * taken from the fringe is optimal. The moves are only laid out at the
+ * end, from the order of the tiles.
+ *
+ */
+package BasicAISearches;
+import java.util.PriorityQueue;
+
+public class MacroAStar {
+
+    private static final int VERTICAL = 13, HORIZONTAL = 10;
+
+    private final int dirtWidth;
+    private final int words;
+    private final int tiles;
+    //A record per state, its position the tile last cleaned.
+    private final NodeArena arena;
+    private final StateTable index;
+    private final long[] dirt;//State being expanded.
+    private final long[] child;
+    private DistanceOracle oracle;//Of the room being searched.
+    private DirtSummary summary;//Of the record being expanded.
+    private long nodesExpanded;
+
+    public MacroAStar(int dirtWidth, int dirtHeight)
+    {
+        this.dirtWidth = dirtWidth;
+        tiles = (dirtWidth-1)*(dirtHeight-1);
+        words = (tiles+63)/64;
+        arena = new NodeArena(words, 1024);
+        index = new StateTable(words);
+        dirt = new long[words];
+        child = new long[words];
+    }
+
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    //Number of states with a record.
+    public int getStatesGenerated()
+    {
+        return arena.size();
+    }
+
+    //Returns the goal node of a cheapest solution, laid out in single
+    //actions from the root.
+    public Node search(Node root)
+    {
+        arena.clear();
+        index.clear();
+        oracle = root.getOracle();
+        if( summary == null || summary.getOracle() != oracle )
+            summary = DirtSummary.scratch(tiles, oracle);
+        nodesExpanded = 0;
+        //Entries are (f, g, record), lowest f and then highest g first.
+        PriorityQueue<long[]> fringe = new PriorityQueue<long[]>(
+                (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+                        : Long.compare(b[1], a[1]));
+
+        long[] start = root.getDirt();
+        summary.load(start, dirtWidth);
+        int h = heuristic(start, root.getRobotPosX(), root.getRobotPosY());
+        int r = arena.add(start, root.position(), 0, h, -1, -1);
+        arena.setSpare(r, (int)Math.round(10*summary.getTreeWeight()));
+        index.put(start, root.position(), r);
+        fringe.add(new long[] { h, 0, r });
+
+        while( !fringe.isEmpty() )
+        {
+            long[] top = fringe.poll();
+            int n = (int)top[2];
+            if( arena.isClosed(n) || arena.getCost(n) != top[1] )
+                continue;//Stale entry.
+            arena.getDirt(n, dirt);
+            if( isClean(dirt) )
+                return unfold(root, n);
+            arena.setClosed(n, true);
+            nodesExpanded++;
+            expand(n, fringe);
+        }
+        return null;
+    }
+
+    //Adds a successor for each dirty tile left.
+    private void expand(int n, PriorityQueue<long[]> fringe)
+    {
+        int pos = arena.getPosition(n), g = arena.getCost(n);
+        int x = pos/dirtWidth, y = pos%dirtWidth;
+        summary.load(dirt, dirtWidth, arena.getSpare(n)/10.0);
+        for( int w = 0; w < words; w++ )
+            for( long bits = dirt[w]; bits != 0; bits &= bits-1 )
+            {
+                int b = (w<<6) + Long.numberOfTrailingZeros(bits);
+                int tx = b/(dirtWidth-1)+1, ty = b%(dirtWidth-1)+1;
+                int step = VERTICAL*Math.abs(tx-x)
+                        + HORIZONTAL*Math.abs(ty-y);
+                if( oracle != null )
+                    step = oracle.distance(x, y, tx, ty);
+                if( step == DistanceOracle.UNREACHABLE )
+                    continue;
+                int cost = g + step;
+                System.arraycopy(dirt, 0, child, 0, words);
+                child[w] &= ~(1L<<b);
+                int tile = tx*dirtWidth+ty;
+                int id = index.get(child, tile);
+                if( id < 0 )
+                {
+                    summary.remove(tx, ty, child, dirtWidth);
+                    int h = heuristic(child, tx, ty);
+                    id = arena.add(child, tile, cost, h, n, -1);
+                    arena.setSpare(id, 
+                            (int)Math.round(10*summary.getTreeWeight()));
+                    summary.restore();
+                    index.put(child, tile, id);
+                }
+                else if( arena.isClosed(id) || cost >= arena.getCost(id) )
+                    continue;
+                else
+                    arena.setPath(id, cost, n, -1);
+                fringe.add(new long[] { cost + arena.getHeuristic(id), cost,
+                        id });
+            }
+    }
+
+    //Goes to the tile of each record on the path in turn and sucks.
+    private Node unfold(Node root, int goal)
+    {
+        int length = 0;
+        for( int i = goal; arena.getParent(i) >= 0; i = arena.getParent(i) )
+            length++;
+        int[] tiles = new int[length];
+        for( int i = goal; arena.getParent(i) >= 0; i = arena.getParent(i) )
+            tiles[--length] = arena.getPosition(i);
+        Node node = root;
+        for( int tile : tiles )
+            node = node.travelTo(tile/dirtWidth, tile%dirtWidth)
+                    .successor(Node.SUCK);
+        return node;
+    }
+
+    //The heuristic of a state whose dirt is in the summary.
+    private int heuristic(long[] state, int x, int y)
+    {
+        return (int)Math.round(10*Node.heuristicFunction(summary, state,
+                dirtWidth, x, y));
+    }
+
+    private static boolean isClean(long[] dirt)
+    {
+        for( int w = 0; w < dirt.length; w++ )
+            if( dirt[w] != 0 )
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * File:   MemoryBoundedAStar.java
+ * Author: Alain Chen
+ *
+ * This class implements simplified memory-bounded A* (SMA*).
+ * The search tree never holds more than a fixed number of nodes.
+ * When it is full, the shallowest leaf with the highest f-score is dropped
+ * and its f-score is remembered by its parent, so the parent knows how
+ * good the forgotten subtree was and can regenerate it later.
+ *
+ */
+package BasicAISearches;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+public class MemoryBoundedAStar {
+
+    //A node of the search tree kept in memory.
+    private static class Entry {
+        final Node node;
+        final Entry parent;
+        final int action;//Action the parent used to reach this entry.
+        final int depth;
+        final long id;//Breaks ties so that the queue is a strict order.
+        double f;
+        //Children currently in memory, indexed by action.
+        final Entry[] children = new Entry[Node.NUM_ACTIONS];
+        //f-score of a dropped child, NaN if the child was not dropped.
+        final double[] forgotten = new double[Node.NUM_ACTIONS];
+        int dead;//Bitmask of actions that can not or need not be taken.
+        int tried;//Bitmask of actions generated at least once.
+        int numChildren;
+        boolean queued;
+
+        Entry(Node node, Entry parent, int action, int depth, long id)
+        {
+            this.node = node;
+            this.parent = parent;
+            this.action = action;
+            this.depth = depth;
+            this.id = id;
+            for( int a = 0; a < Node.NUM_ACTIONS; a++ )
+                forgotten[a] = Double.NaN;
+        }
+    }
+
+    private static final int ALL = (1<<Node.NUM_ACTIONS)-1;
+
+    private final int memoryLimit;
+    private final TreeSet<Entry> queue;
+    //The cheapest node in memory for each state.
+    private final HashMap<Node, Entry> best;
+    private int inMemory;
+    private long nextId;
+    private long nodesExpanded;
+    private long nodesDropped;
+
+    //memoryLimit is the most nodes the search tree may hold at once.
+    public MemoryBoundedAStar(int memoryLimit)
+    {
+        this.memoryLimit = memoryLimit;
+        best = new HashMap<Node, Entry>();
+        //Lowest f first, and the deepest among equal f.
+        queue = new TreeSet<Entry>((a, b) -> {
+            if( a.f != b.f )
+                return a.f < b.f ? -1 : 1;
+            if( a.depth != b.depth )
+                return b.depth - a.depth;
+            return Long.compare(a.id, b.id);
+        });
+    }
+
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    public long getNodesDropped()
+    {
+        return nodesDropped;
+    }
+
+    //Returns the goal node of a cheapest solution that fits in memory,
+    //or null if there is none.
+    public Node search(Node start)
+    {
+        queue.clear();
+        best.clear();
+        inMemory = 1;
+        nextId = 0;
+        nodesExpanded = 0;
+        nodesDropped = 0;
+        Entry root = new Entry(start, null, -1, 0, nextId++);
+        root.f = start.fScore();
+        best.put(start, root);
+        enqueue(root);
+
+        while( !queue.isEmpty() )
+        {
+            Entry e = queue.first();
+            if( e.f == Double.POSITIVE_INFINITY )
+                return null;
+            if( e.node.goalTest() )
+                return e.node;
+
+            int a = nextAction(e);
+            if( a < 0 )
+            {
+                //Every child is in memory, nothing to do here.
+                dequeue(e);
+                continue;
+            }
+            Node child = e.node.successor(a);
+            if( child == null || isRedundant(e, child) )
+            {
+                killAction(e, a);
+                continue;
+            }
+            nodesExpanded++;
+
+            Entry s = new Entry(child, e, a, e.depth+1, nextId++);
+            s.f = child.fScore();
+            if( !Double.isNaN(e.forgotten[a]) )
+                //Regenerated child, it keeps what was learnt about it.
+                s.f = Math.max(s.f, e.forgotten[a]);
+            //Path-max keeps f non-decreasing along a path.
+            s.f = Math.max(s.f, e.f);
+            e.forgotten[a] = Double.NaN;
+            e.tried |= 1<<a;
+            e.children[a] = s;
+            e.numChildren++;
+            inMemory++;
+            remember(s);
+            //A path as long as the memory can not be extended.
+            if( s.f == Double.POSITIVE_INFINITY 
+                    || (!child.goalTest() && s.depth >= memoryLimit-1) )
+            {
+                discard(s);
+                continue;
+            }
+
+            //Once every action has been tried the parent's f-score
+            //is the best of its children, in memory or forgotten.
+            dequeue(e);
+            if( hasActionLeft(e) )
+                enqueue(e);
+            backUp(e);
+
+            enqueue(s);
+            while( inMemory > memoryLimit )
+                if( !dropWorstLeaf(s) )
+                    break;
+        }
+        return null;
+    }
+
+    //A child is not worth keeping if its state is already on the path
+    //to it, or if the same state is in memory with a cost and depth
+    //that are no worse. Memory keeps that other copy, or its f-score in
+    //a forgotten slot, so no solution is lost.
+    private boolean isRedundant(Entry e, Node child)
+    {
+        for( Entry t = e; t != null; t = t.parent )
+            if( t.node.equals(child) )
+                return true;
+        Entry other = best.get(child);
+        return other != null 
+                && other.node.getCost() <= child.getCost()+1e-9
+                && other.depth <= e.depth+1;
+    }
+
+    private void remember(Entry s)
+    {
+        Entry other = best.get(s.node);
+        if( other == null || s.node.getCost() < other.node.getCost() )
+            best.put(s.node, s);
+    }
+
+    private void forget(Entry e)
+    {
+        if( best.get(e.node) == e )
+            best.remove(e.node);
+    }
+
+    //Mark an action as not worth taking and update the node for it.
+    private void killAction(Entry e, int a)
+    {
+        e.dead |= 1<<a;
+        e.forgotten[a] = Double.NaN;
+        if( !hasActionLeft(e) )
+            dequeue(e);
+        backUp(e);
+    }
+
+    //An action that is neither dead nor has its child in memory.
+    private static boolean hasActionLeft(Entry e)
+    {
+        for( int a = 0; a < Node.NUM_ACTIONS; a++ )
+            if( (e.dead & (1<<a)) == 0 && e.children[a] == null )
+                return true;
+        return false;
+    }
+
+    //The next child to try: one never tried, in action order,
+    //otherwise the forgotten child with the best f-score.
+    private static int nextAction(Entry e)
+    {
+        int best = -1;
+        for( int a = 0; a < Node.NUM_ACTIONS; a++ )
+        {
+            if( (e.dead & (1<<a)) != 0 || e.children[a] != null )
+                continue;
+            if( (e.tried & (1<<a)) == 0 )
+                return a;
+            if( best < 0 || e.forgotten[a] < e.forgotten[best] )
+                best = a;
+        }
+        return best;
+    }
+
+    //Set the f-score of a node to the best of its children and carry
+    //the change up to its ancestors.
+    private void backUp(Entry e)
+    {
+        while( e != null && (e.tried | e.dead) == ALL )
+        {
+            double f = Double.POSITIVE_INFINITY;
+            for( int a = 0; a < Node.NUM_ACTIONS; a++ )
+            {
+                if( e.children[a] != null )
+                    f = Math.min(f, e.children[a].f);
+                else if( (e.dead & (1<<a)) == 0 )
+                    f = Math.min(f, e.forgotten[a]);
+            }
+            if( f == Double.POSITIVE_INFINITY && e.numChildren == 0 )
+            {
+                discard(e);
+                return;
+            }
+            if( f == e.f )
+                return;
+            boolean wasQueued = e.queued;
+            dequeue(e);
+            e.f = f;
+            if( wasQueued )
+                enqueue(e);
+            e = e.parent;
+        }
+    }
+
+    //Remove a leaf that can not lead to a solution, and mark the action
+    //that reached it as dead in its parent.
+    private void discard(Entry e)
+    {
+        dequeue(e);
+        forget(e);
+        e.f = Double.POSITIVE_INFINITY;
+        Entry p = e.parent;
+        if( p == null )
+            return;
+        p.children[e.action] = null;
+        p.numChildren--;
+        inMemory--;
+        killAction(p, e.action);
+    }
+
+    //Drop the shallowest leaf with the highest f-score, other than keep.
+    //Returns false if there is no leaf that can be dropped.
+    private boolean dropWorstLeaf(Entry keep)
+    {
+        Iterator<Entry> it = queue.descendingIterator();
+        while( it.hasNext() )
+        {
+            Entry e = it.next();
+            if( e.numChildren > 0 || e.parent == null || e == keep )
+                continue;
+            it.remove();
+            e.queued = false;
+            forget(e);
+            Entry p = e.parent;
+            p.children[e.action] = null;
+            p.forgotten[e.action] = e.f;
+            p.numChildren--;
+            inMemory--;
+            nodesDropped++;
+            enqueue(p);
+            return true;
+        }
+        return false;
+    }
+
+    private void enqueue(Entry e)
+    {
+        if( !e.queued )
+        {
+            queue.add(e);
+            e.queued = true;
+        }
+    }
+
+    private void dequeue(Entry e)
+    {
+        if( e.queued )
+        {
+            queue.remove(e);
+            e.queued = false;
+        }
+    }
+}
@@ -9,15 +9,27 @@
  */
 package BasicAISearches;
 import java.util.ArrayList;
-import java.util.PriorityQueue;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Stack;
 
 public class Node implements Comparable<Node>{
 
+    //Action codes, numbered in the order IDS adds the children.
+    public static final int UP = 0, LEFT = 1, SUCK = 2, RIGHT = 3, DOWN = 4;
+    public static final int NUM_ACTIONS = 5;
+
+    //Optional precomputed pattern databases, null when not used.
+    private static volatile PatternDatabase patternDatabase;
+
     private ArrayList<Node> children;   
     private int depth;    
-    //True means dirty, false means clean. 
-    private ArrayList<ArrayList<Boolean>> dirt; 
+    //Dirt distribution packed into bits, one bit per tile.
+    //A set bit means dirty, a clear bit means clean.
+    //Tile (x,y) is stored at bit (x-1)*(dirtWidth-1)+(y-1).
+    private long[] dirt; 
+    //Heuristic terms of the dirt, shared with every node with this dirt.
+    private DirtSummary summary;
     private double currCost;
     private String action;
     private int dirtWidth;
@@ -26,21 +38,192 @@ public class Node implements Comparable<Node>{
     private int robotPosY;
     private Node parent;
     private double hScore;//Heuristic score    
+    int heapIndex = -1;//Position in an OpenList, -1 if not in one.
 
     public Node(ArrayList<ArrayList<Boolean>> dirt, int posX, int posY, 
             int depth, double cost, String act)
+    {
+        this(packDirt(dirt), dirt.get(1).size(), dirt.size(), 
+                posX, posY, depth, cost, act);
+    } 
+
+    private Node(long[] dirt, int dirtWidth, int dirtHeight, int posX, 
+            int posY, int depth, double cost, String act)
+    {
+        this(dirt, DirtSummary.of(dirt, dirtWidth), dirtWidth, dirtHeight, 
+                posX, posY, depth, cost, act);
+    }
+
+    private Node(long[] dirt, DirtSummary summary, int dirtWidth, 
+            int dirtHeight, int posX, int posY, int depth, double cost, 
+            String act)
     {
         this.dirt = dirt;
+        this.summary = summary;
         robotPosX = posX;
         robotPosY = posY;   
         this.depth = depth;
         parent = null;
         currCost = cost;
         action = act;
-        dirtWidth= dirt.get(1).size();
-        dirtHeight = dirt.size();
+        this.dirtWidth = dirtWidth;
+        this.dirtHeight = dirtHeight;
         hScore = heuristicFunction();
-    } 
+    }
+
+    //Make a start node from a packed dirt bitmask.
+    static Node root(long[] dirt, int dirtWidth, int dirtHeight, int posX,
+            int posY)
+    {
+        return root(dirt, dirtWidth, dirtHeight, posX, posY, null);
+    }
+
+    //Make a start node in a room with the blocked tiles of the oracle,
+    //or without any if it is null. The oracle is kept in the summary
+    //of the dirt, which nodes share already, so nodes are no bigger.
+    static Node root(long[] dirt, int dirtWidth, int dirtHeight, int posX,
+            int posY, DistanceOracle oracle)
+    {
+        long[] copy = dirt.clone();
+        return new Node(copy, DirtSummary.of(copy, dirtWidth, oracle), 
+                dirtWidth, dirtHeight, posX, posY, 0, 0, "START");
+    }
+
+    //Pack a dirt distribution into a bitmask of (height-1)*(width-1) bits.
+    public static long[] packDirt(ArrayList<ArrayList<Boolean>> dirt)
+    {
+        int height = dirt.size(), width = dirt.get(1).size();
+        long[] packed = new long[((height-1)*(width-1)+63)/64];
+        for( int i = 1; i < height; i++ )
+            for( int j = 1; j < width; j++ )
+                if( dirt.get(i).get(j) )
+                {
+                    int b = (i-1)*(width-1)+(j-1);
+                    packed[b>>>6] |= 1L<<b;
+                }
+        return packed;
+    }
+
+    //Whether a move keeps the robot in the room and off blocked tiles.
+    private boolean canMove(int act)
+    {
+        int x = robotPosX, y = robotPosY;
+        switch(act)
+        {
+            case UP:    x--; break;
+            case LEFT:  y--; break;
+            case RIGHT: y++; break;
+            case DOWN:  x++; break;
+        }
+        if( x < 1 || x >= dirtHeight || y < 1 || y >= dirtWidth )
+            return false;
+        DistanceOracle oracle = summary.getOracle();
+        return oracle == null || !oracle.isBlocked(x, y);
+    }
+
+    private boolean isDirty(int x, int y)
+    {
+        int b = (x-1)*(dirtWidth-1)+(y-1);
+        return (dirt[b>>>6] & (1L<<b)) != 0;
+    }
+
+    //Make a child that moves the robot. The dirt and its summary are 
+    //shared with the parent since moving never changes them, so only
+    //the robot terms of the heuristic are worked out.
+    private Node move(int posX, int posY, int depth, double cost, String act)
+    {
+        return new Node(dirt, summary, dirtWidth, dirtHeight, posX, posY, 
+                depth, cost, act);
+    }
+
+    //Make a child that sucks the dirt under the robot.
+    //Only this child gets its own copy of the dirt, with one bit cleared.
+    private Node suck(int depth)
+    {
+        long[] dirtSuck = dirt.clone();
+        int b = (robotPosX-1)*(dirtWidth-1)+(robotPosY-1);
+        dirtSuck[b>>>6] &= ~(1L<<b);
+        return new Node(dirtSuck, summary.without(robotPosX, robotPosY, 
+                dirtSuck, dirtWidth), dirtWidth, dirtHeight, robotPosX, 
+                robotPosY, depth, currCost, "SUCK ");
+    }
+
+    //Make the child reached by one action, with depth one more than this
+    //node. Returns null if the action cannot be done here.
+    public Node successor(int act)
+    {
+        Node n = null;
+        switch(act)
+        {
+            case UP:
+                if( canMove(UP) )
+                    n = move(robotPosX-1, robotPosY, depth+1, 
+                            currCost+1.3, "UP   ");
+                break;
+            case LEFT:
+                if( canMove(LEFT) )
+                    n = move(robotPosX, robotPosY-1, depth+1, 
+                            currCost+1, "LEFT ");
+                break;
+            case SUCK:
+                if( isDirty(robotPosX, robotPosY) )
+                    n = suck(depth+1);
+                break;
+            case RIGHT:
+                if( canMove(RIGHT) )
+                    n = move(robotPosX, robotPosY+1, depth+1, 
+                            currCost+1, "RIGHT");
+                break;
+            case DOWN:
+                if( canMove(DOWN) )
+                    n = move(robotPosX+1, robotPosY, depth+1, 
+                            currCost+1.3, "DOWN ");
+                break;
+        }
+        if( n != null )
+            n.parent = this;
+        return n;
+    }
+
+    //The node reached by a cheapest walk to the tile (x,y). In a room
+    //without blocked tiles the robot moves up or down to row x, then left
+    //or right to column y. Otherwise each move is one that the distance
+    //oracle shows to be on a cheapest walk.
+    public Node travelTo(int x, int y)
+    {
+        DistanceOracle oracle = summary.getOracle();
+        if( oracle != null )
+        {
+            Node n = this;
+            int d = oracle.distance(robotPosX, robotPosY, x, y);
+            if( d == DistanceOracle.UNREACHABLE )
+                return null;
+            while( d > 0 )
+                for( int a = NUM_ACTIONS-1; a >= 0; a-- )
+                {
+                    Node m = a == SUCK ? null : n.successor(a);
+                    int step = a == UP || a == DOWN ? 13 : 10;
+                    if( m != null && oracle.distance(m.robotPosX,
+                            m.robotPosY, x, y) == d-step )
+                    {
+                        n = m;
+                        d -= step;
+                        break;
+                    }
+                }
+            return n;
+        }
+        Node n = this;
+        while( n.robotPosX > x )
+            n = n.successor(UP);
+        while( n.robotPosX < x )
+            n = n.successor(DOWN);
+        while( n.robotPosY > y )
+            n = n.successor(LEFT);
+        while( n.robotPosY < y )
+            n = n.successor(RIGHT);
+        return n;
+    }
 
     //Expand node for IDS
     public void expandNode(int depthLimit, Problem p){
@@ -50,53 +233,44 @@ public class Node implements Comparable<Node>{
 
         //The order of children added is based on the rule given.
         //Go up.
-        if( robotPosX > 1 )
+        if( canMove(UP) )
         {         
-            Node n = new Node(dirt, robotPosX-1, robotPosY, depth+1, 
+            Node n = move(robotPosX-1, robotPosY, depth+1, 
                     currCost+1.3, "UP   ");
             n.parent = this;
             children.add(n);        
         }
 
         //Go left.
-        if( robotPosY > 1 )
+        if( canMove(LEFT) )
         {
-            Node n = new Node(dirt, robotPosX, robotPosY-1, depth+1, 
+            Node n = move(robotPosX, robotPosY-1, depth+1, 
                     currCost+1, "LEFT ");
             n.parent = this;
             children.add(n);        
         }
 
         //Suck.
-        if(dirt.get(robotPosX).get(robotPosY))
+        if(isDirty(robotPosX, robotPosY))
         {
-            ArrayList<ArrayList<Boolean>> dirtSuck = new ArrayList();
-            for(int i=0;i<dirtHeight;i++)
-            {
-                dirtSuck.add(new ArrayList<Boolean>());
-                for(int j=0;j<dirtWidth;j++)
-                    dirtSuck.get(i).add(dirt.get(i).get(j));
-            }
-            (dirtSuck.get(robotPosX)).set(robotPosY, false);
-            Node n = new Node(dirtSuck, robotPosX, robotPosY, depth+1, 
-                    currCost, "SUCK ");
+            Node n = suck(depth+1);
             n.parent = this;
             children.add(n);   
         }
 
         //Go right.
-        if( robotPosY < dirtWidth-1 )
+        if( canMove(RIGHT) )
         {
-            Node n = new Node(dirt, robotPosX, robotPosY+1, depth+1, 
+            Node n = move(robotPosX, robotPosY+1, depth+1, 
                     currCost+1, "RIGHT");
             n.parent = this;
             children.add(n);    
         }
 
         //Go down.
-        if( robotPosX < dirtHeight-1 )
+        if( canMove(DOWN) )
         {
-            Node n = new Node(dirt, robotPosX+1, robotPosY, depth+1, 
+            Node n = move(robotPosX+1, robotPosY, depth+1, 
                     currCost+1.3, "DOWN ");
             n.parent = this;
             children.add(n);   
@@ -105,175 +279,234 @@ public class Node implements Comparable<Node>{
     }
     
     //Expand node for DFGS.
-    public void expandNode(Stack<Node> fringe,ArrayList<Node> visited)
+    //The seen table holds every state ever pushed on the fringe,
+    //which is exactly the visited nodes plus the nodes still on the fringe.
+    public void expandNode(Stack<Node> fringe,StateTable seen)
     {
         //The order added is based on the rule given.
         //Go down.
-        if( robotPosX < dirtHeight-1 )
+        if( canMove(DOWN) )
         {
-            Node n = new Node(dirt, robotPosX+1, robotPosY, 0, 
+            Node n = move(robotPosX+1, robotPosY, 0, 
                     currCost+1.3, "DOWN ");
             n.parent = this;
-            if(!visited.contains(n)&&!fringe.contains(n))
+            if(seen.add(n.dirt, n.position()))
                 fringe.add(n);  
         }
         
         //Go right.
-        if( robotPosY < dirtWidth-1 )
+        if( canMove(RIGHT) )
         {
-            Node n = new Node(dirt, robotPosX, robotPosY+1, 0, 
+            Node n = move(robotPosX, robotPosY+1, 0, 
                     currCost+1,"RIGHT");
             n.parent = this;
-            if(!visited.contains(n)&&!fringe.contains(n))
+            if(seen.add(n.dirt, n.position()))
                 fringe.add(n);  
         }
 
         //Suck.
-        if(dirt.get(robotPosX).get(robotPosY))
+        if(isDirty(robotPosX, robotPosY))
         {
-            ArrayList<ArrayList<Boolean>> dirtSuck = new ArrayList();
-            for(int i=0;i<dirtHeight;i++)
-            {
-                dirtSuck.add(new ArrayList<Boolean>());
-                for(int j=0;j<dirtWidth;j++)
-                    dirtSuck.get(i).add(dirt.get(i).get(j));
-            }
-            (dirtSuck.get(robotPosX)).set(robotPosY, false);
-            Node n = new Node(dirtSuck, robotPosX, robotPosY,0,
-                    currCost, "SUCK ");
+            Node n = suck(0);
             n.parent = this;
-            if(!visited.contains(n)&&!fringe.contains(n))
+            if(seen.add(n.dirt, n.position()))
                 fringe.add(n);   
         }
 
         //Go left.
-        if( robotPosY > 1 )
+        if( canMove(LEFT) )
         {
-            Node n = new Node(dirt, robotPosX, robotPosY-1,0,
+            Node n = move(robotPosX, robotPosY-1,0,
                     currCost+1,"LEFT ");
             n.parent = this;
-            if(!visited.contains(n)&&!fringe.contains(n))
+            if(seen.add(n.dirt, n.position()))
                 fringe.add(n);       
         }
         
         //Go up.
-        if( robotPosX > 1 )
+        if( canMove(UP) )
         {         
-            Node n = new Node(dirt, robotPosX-1, robotPosY,0,
+            Node n = move(robotPosX-1, robotPosY,0,
                     currCost+1.3,"UP   ");
             n.parent = this;
-            if(!visited.contains(n)&&!fringe.contains(n))
+            if(seen.add(n.dirt, n.position()))
                 fringe.add(n);        
         }
     }
     
-    //Expand node for A*
-    public void expandNode(PriorityQueue<Node> fringe)
+    //Expand node for A*.
+    //There is at most one node per state. A successor that reaches a known
+    //state with a lower cost updates that node instead: an open node has
+    //its key decreased, a closed node is put back on the fringe.
+    //Returns the number of closed nodes that were reopened.
+    public int expandNode(OpenList fringe, StateTable index, 
+            ArrayList<Node> nodes)
     {
+        int reopened = 0;
         //The order added is based on the rule given.
         //Go down.
-        if( robotPosX < dirtHeight-1 )
-        {
-            Node n = new Node(dirt, robotPosX+1, robotPosY, 0, 
-                    currCost+1.3, "DOWN ");
-            n.parent = this;
-            fringe.add(n);
-        }     
+        if( canMove(DOWN) )
+            reopened += relax(move(robotPosX+1, robotPosY, 0, 
+                    currCost+1.3, "DOWN "), fringe, index, nodes);
         
         //Go right.
-        if( robotPosY < dirtWidth-1 )
-        {
-            Node n = new Node(dirt, robotPosX, robotPosY+1, 0, 
-                    currCost+1,"RIGHT");
-            n.parent = this;
-            fringe.add(n);
-        }
+        if( canMove(RIGHT) )
+            reopened += relax(move(robotPosX, robotPosY+1, 0, 
+                    currCost+1,"RIGHT"), fringe, index, nodes);
 
         //Suck.
-        if(dirt.get(robotPosX).get(robotPosY))
-        {
-            ArrayList<ArrayList<Boolean>> dirtSuck = new ArrayList();
-            for(int i=0;i<dirtHeight;i++)
-            {
-                dirtSuck.add(new ArrayList<Boolean>());
-                for(int j=0;j<dirtWidth;j++)
-                    dirtSuck.get(i).add(dirt.get(i).get(j));
-            }
-            (dirtSuck.get(robotPosX)).set(robotPosY, false);
-            Node n = new Node(dirtSuck, robotPosX, robotPosY,0,
-                    currCost, "SUCK ");
-            n.parent = this;
-            fringe.add(n);
-        }
+        if(isDirty(robotPosX, robotPosY))
+            reopened += relax(suck(0), fringe, index, nodes);
 
         //Go left.
-        if( robotPosY > 1 )
-        {
-            Node n = new Node(dirt, robotPosX, robotPosY-1,0,
-                    currCost+1,"LEFT ");
-            n.parent = this; 
-            fringe.add(n);
-        }
+        if( canMove(LEFT) )
+            reopened += relax(move(robotPosX, robotPosY-1,0,
+                    currCost+1,"LEFT "), fringe, index, nodes);
         
         //Go up.
-        if( robotPosX > 1 )
-        {         
-            Node n = new Node(dirt, robotPosX-1, robotPosY,0,
-                    currCost+1.3,"UP   ");
-            n.parent = this;
-                fringe.add(n);        
-        }
-        
-        //Limit memory.
-        int memorySize = 320000;
-        if(fringe.size()>memorySize)
+        if( canMove(UP) )
+            reopened += relax(move(robotPosX-1, robotPosY,0,
+                    currCost+1.3,"UP   "), fringe, index, nodes);
+        return reopened;
+    }
+
+    //Add a successor of this node to the A* fringe.
+    private int relax(Node n, OpenList fringe, StateTable index, 
+            ArrayList<Node> nodes)
+    {
+        n.parent = this;
+        return addToFringe(n, fringe, index, nodes);
+    }
+
+    //Add a node to an A* fringe that keeps one node per state, or lower
+    //the cost of the existing node for its state. 
+    //Returns 1 if a closed node was reopened.
+    static int addToFringe(Node n, OpenList fringe, StateTable index, 
+            ArrayList<Node> nodes)
+    {
+        int id = index.get(n.dirt, n.position());
+        if( id < 0 )
         {
-            PriorityQueue<Node> temp=new PriorityQueue();
-            for(int i=0;i<memorySize-5;i++)
-            {
-                temp.add(fringe.poll());
-            }
-            fringe=temp;
+            index.put(n.dirt, n.position(), nodes.size());
+            nodes.add(n);
+            fringe.add(n);
+            return 0;
         }
+        Node old = nodes.get(id);
+        if( n.gTenths() >= old.gTenths() )
+            return 0;
+        //An open node is taken out while it still has its old key.
+        boolean open = fringe.contains(old);
+        if( open )
+            fringe.remove(old);
+        old.takePath(n);
+        fringe.add(old);
+        return open ? 0 : 1;
     }
     
-    private double fScore()
+    //A copy of the path to this node that is not changed when nodes on
+    //the path are given other paths later.
+    Node copyPath()
+    {
+        Node copy = new Node(dirt, summary, dirtWidth, dirtHeight, 
+                robotPosX, robotPosY, depth, currCost, action);
+        if( parent != null )
+            copy.parent = parent.copyPath();
+        return copy;
+    }
+
+    //Raise the heuristic of this node to its known exact cost to a goal.
+    void setExactHeuristic(double cost)
+    {
+        hScore = cost;
+    }
+
+    //The code of the action that reached this node, -1 for the start.
+    int getActionCode()
+    {
+        switch(action)
+        {
+            case "UP   ":
+                return UP;
+            case "LEFT ":
+                return LEFT;
+            case "SUCK ":
+                return SUCK;
+            case "RIGHT":
+                return RIGHT;
+            case "DOWN ":
+                return DOWN;
+            default:
+                return -1;
+        }
+    }
+
+    //Give this node the path of another node for the same state.
+    void takePath(Node n)
+    {
+        currCost = n.currCost;
+        parent = n.parent;
+        action = n.action;
+        depth = n.depth;
+    }
+
+    double fScore()
     {
         return currCost + hScore;
     }
+
+    //Costs are sums of 1.0 and 1.3, so in tenths they are whole numbers.
+    int gTenths()
+    {
+        return (int)Math.round(10*currCost);
+    }
+
+    int hTenths()
+    {
+        return (int)Math.round(10*hScore);
+    }
+
+    int fTenths()
+    {
+        return gTenths() + hTenths();
+    }
     
-    //The heuristic score is the distance between 
-    //the leftmost position of dirt and rightmost position of dirt
-    //plus the distance between the topmost and bottommost position of dirt
-    //plus the minimum distance the robot needs 
-    //to travel to one of those spots,
-    //all of those multiplied by their step costs.
-    //This heuristic is admissable as the robot needs to travel
-    //at least that distance to clean up all the dirt.
+    //The heuristic score is the larger of two admissible bounds,
+    //the bounding box and the spanning tree bounds of DirtSummary,
+    //so it is admissible too. Both are consistent, so their maximum is 
+    //as well. If pattern databases are loaded, their value is taken 
+    //into the maximum too.
     private double heuristicFunction()
     {
-        int leftmost=robotPosY,rightmost=robotPosY,
-                topmost=robotPosX,bottommost=robotPosX;
-        for( int i = 1, n = dirtHeight; i < n; i++ )
-            for( int j = 1, k = dirtWidth; j < k; j++ )
-                if( dirt.get(i).get(j) )
-                {
-                    if(i<topmost)
-                        topmost=i;
-                    if(i>bottommost)
-                        bottommost=i;
-                    if(j<leftmost)
-                        leftmost=j;
-                    if(j>rightmost)
-                        rightmost=j;                        
-                }
-        
-        return 1.3*(Math.abs(topmost-bottommost)+
-                Math.min(Math.abs(topmost-robotPosX), 
-                        Math.abs(robotPosX-bottommost)))
-                +Math.abs(leftmost-rightmost)
-                +Math.min(Math.abs(leftmost-robotPosX), 
-                        Math.abs(robotPosX-rightmost));
+        return heuristicFunction(summary, dirt, dirtWidth, 
+                robotPosX, robotPosY);
+    }
+
+    //The same heuristic for a state that is not stored in a node.
+    public static double heuristicFunction(long[] dirt, int dirtWidth, 
+            int robotPosX, int robotPosY)
+    {
+        return heuristicFunction(DirtSummary.of(dirt, dirtWidth), dirt, 
+                dirtWidth, robotPosX, robotPosY);
+    }
+
+    //The same heuristic, reusing a summary of the dirt.
+    public static double heuristicFunction(DirtSummary summary, 
+            long[] dirt, int dirtWidth, int robotPosX, int robotPosY)
+    {
+        double h = Math.max(summary.boundingBoxBound(robotPosX, robotPosY),
+                summary.spanningTreeBound(robotPosX, robotPosY));
+        PatternDatabase pdb = patternDatabase;
+        if( pdb != null )
+            h = Math.max(h, pdb.lookup(dirt, dirtWidth, robotPosX, 
+                    robotPosY));
+        return h;
+    }
+
+    //Use pattern databases in the heuristic, or stop using them if null.
+    public static void setPatternDatabase(PatternDatabase pdb)
+    {
+        patternDatabase = pdb;
     }
 
     //Print all ancestors leading to this node.
@@ -302,13 +535,22 @@ public class Node implements Comparable<Node>{
         System.out.printf( "Path-Cost: %.1f\n", currCost);
     }
 
+    //The actions from the start to this node, without the START.
+    public ArrayList<String> getActions()
+    {
+        ArrayList<String> actions = new ArrayList<String>();
+        for( Node n = this; n.parent != null; n = n.parent )
+            actions.add(n.action.trim());
+        Collections.reverse(actions);
+        return actions;
+    }
+
     //A goal state is if all tiles are clean.
     public Boolean goalTest()
     {
-        for( int i = 1, n = dirtHeight; i < n; i++ )
-            for( int j = 1, k = dirtWidth; j < k; j++ )
-                if( dirt.get(i).get(j) )
-                    return false;
+        for( int w = 0; w < dirt.length; w++ )
+            if( dirt[w] != 0 )
+                return false;
 
         return true;
     }
@@ -320,11 +562,59 @@ public class Node implements Comparable<Node>{
                 +robotPosY+") with dirty nodes ");
         for( int i = 1, n = dirtHeight; i < n; i++ )
             for( int j = 1, k = dirtWidth; j < k; j++ )
-                if( dirt.get(i).get(j) )
+                if( isDirty(i,j) )
                     System.out.print("("+i+","+j+") ");
         System.out.println();
     }
     
+    //Robot position packed into one int, used as part of the state key.
+    public int position()
+    {
+        return robotPosX*dirtWidth+robotPosY;
+    }
+
+    public double getCost()
+    {
+        return currCost;
+    }
+
+    public int getRobotPosX()
+    {
+        return robotPosX;
+    }
+
+    public int getRobotPosY()
+    {
+        return robotPosY;
+    }
+
+    //Width and height of the room, plus one since tiles start at 1.
+    public int getDirtWidth()
+    {
+        return dirtWidth;
+    }
+
+    public int getDirtHeight()
+    {
+        return dirtHeight;
+    }
+
+    public long[] getDirt()
+    {
+        return dirt;
+    }
+
+    //The blocked tiles of the room, or null if there are none.
+    public DistanceOracle getOracle()
+    {
+        return summary.getOracle();
+    }
+
+    public Node getParent()
+    {
+        return parent;
+    }
+
     public int getDepth()
     {
         return depth;
@@ -337,26 +627,38 @@ public class Node implements Comparable<Node>{
     
     @Override
     //Two states are equal if the robot location and dirt distributions
-    //are equal. This is used for the contains() for ArrayList.
+    //are equal.
     public boolean equals(Object o)
     {
         if(!( o instanceof Node) )
             return false;
         
         Node n = (Node) o;
-        if(!dirt.equals(n.dirt))
-            return false;
         if(robotPosX!=n.robotPosX)
             return false;
         if(robotPosY!=n.robotPosY)
             return false;
-        return true;
+        //Dirt bits only mean the same tiles in rooms of the same width.
+        if(dirtWidth!=n.dirtWidth)
+            return false;
+        return Arrays.equals(dirt, n.dirt);
+    }
+    
+    @Override
+    //Consistent with equals(), so nodes can be kept in hashed collections.
+    public int hashCode()
+    {
+        return StateTable.hash(dirt, position());
     }
     
     @Override
+    //Lowest f-score first, and of equal f-scores the highest path cost.
     public int compareTo(Node o)
     {
-        return (int)( 10*(fScore()-o.fScore()));
+        int c = Integer.compare(fTenths(), o.fTenths());
+        if( c != 0 )
+            return c;
+        return Integer.compare(o.gTenths(), gTenths());
     }
 
 }
@@ -0,0 +1,222 @@
+/*
+ * File:   NodeArena.java
+ * Author: Alain Chen
+ *
+ * This class stores search nodes as fixed-width records in one direct
+ * ByteBuffer, outside the Java heap. A record holds the packed dirt, the
+ * robot position, the path cost and heuristic in tenths, the index of
+ * its parent record and the action that reached it, and a spare int
+ * that a search may use for a value of the dirt. Nodes are named by
+ * their index, so a whole search tree is a handful of objects no matter
+ * how many nodes it has, and the path of a node is rebuilt by following
+ * parent indices.
+ *
+ * Record layout, in bytes:
+ *
+ *     0          dirt words, 8 each
+ *     8w         position (int)
+ *     8w+4       path cost in tenths (int)
+ *     8w+8       heuristic in tenths (int)
+ *     8w+12      parent index (int), -1 for the root
+ *     8w+16      action (byte), -1 for the root
+ *     8w+17      flags (byte)
+ *     8w+20      spare (int), 0 when added
+ *
+ * which is a multiple of 8, so the spare int takes no more room.
+ *
+ */
+package BasicAISearches;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class NodeArena {
+
+    private static final String[] ACTION_NAMES =
+        { "UP   ", "LEFT ", "SUCK ", "RIGHT", "DOWN " };
+    private static final int CLOSED = 1;
+
+    private final int words;
+    private final int stride;
+    private final int position, cost, heuristic, parent, action, flags;
+    private final int spare;
+    private ByteBuffer buffer;
+    private int size;
+
+    public NodeArena(int words, int initialCapacity)
+    {
+        this.words = words;
+        position = 8*words;
+        cost = position+4;
+        heuristic = cost+4;
+        parent = heuristic+4;
+        action = parent+4;
+        flags = action+1;
+        spare = flags+3;
+        stride = spare+4;
+        buffer = allocate(Math.max(initialCapacity, 16));
+    }
+
+    private ByteBuffer allocate(int records)
+    {
+        return ByteBuffer.allocateDirect(records*stride)
+                .order(ByteOrder.nativeOrder());
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    //Bytes taken by one record.
+    public int getStride()
+    {
+        return stride;
+    }
+
+    public void clear()
+    {
+        size = 0;
+    }
+
+    //Appends a record and returns its index.
+    public int add(long[] dirt, int pos, int g, int h, int parentIndex,
+            int act)
+    {
+        if( (long)(size+1)*stride > buffer.capacity() )
+            grow();
+        int at = size*stride;
+        for( int w = 0; w < words; w++ )
+            buffer.putLong(at+8*w, dirt[w]);
+        buffer.putInt(at+position, pos);
+        buffer.putInt(at+cost, g);
+        buffer.putInt(at+heuristic, h);
+        buffer.putInt(at+parent, parentIndex);
+        buffer.put(at+action, (byte)act);
+        buffer.put(at+flags, (byte)0);
+        buffer.putInt(at+spare, 0);
+        return size++;
+    }
+
+    //Doubles the buffer. Direct buffers can not be resized in place.
+    private void grow()
+    {
+        long records = 2L*buffer.capacity()/stride;
+        if( records*stride > Integer.MAX_VALUE )
+            records = Integer.MAX_VALUE/stride;
+        if( records <= size )
+            throw new IllegalStateException("Node arena is full at " 
+                    + size + " nodes");
+        ByteBuffer bigger = allocate((int)records);
+        ByteBuffer old = buffer.duplicate();
+        old.position(0).limit(size*stride);
+        bigger.put(old);
+        buffer = bigger;
+    }
+
+    //Copies the dirt of record i into the given array.
+    public void getDirt(int i, long[] into)
+    {
+        int at = i*stride;
+        for( int w = 0; w < words; w++ )
+            into[w] = buffer.getLong(at+8*w);
+    }
+
+    //Whether record i holds the given dirt and position.
+    public boolean holds(int i, long[] dirt, int pos)
+    {
+        int at = i*stride;
+        if( buffer.getInt(at+position) != pos )
+            return false;
+        for( int w = 0; w < words; w++ )
+            if( buffer.getLong(at+8*w) != dirt[w] )
+                return false;
+        return true;
+    }
+
+    public int getPosition(int i)
+    {
+        return buffer.getInt(i*stride+position);
+    }
+
+    public int getCost(int i)
+    {
+        return buffer.getInt(i*stride+cost);
+    }
+
+    public int getHeuristic(int i)
+    {
+        return buffer.getInt(i*stride+heuristic);
+    }
+
+    public int getParent(int i)
+    {
+        return buffer.getInt(i*stride+parent);
+    }
+
+    public int getAction(int i)
+    {
+        return buffer.get(i*stride+action);
+    }
+
+    public int getSpare(int i)
+    {
+        return buffer.getInt(i*stride+spare);
+    }
+
+    public void setSpare(int i, int value)
+    {
+        buffer.putInt(i*stride+spare, value);
+    }
+
+    public void setHeuristic(int i, int h)
+    {
+        buffer.putInt(i*stride+heuristic, h);
+    }
+
+    //Gives record i a cheaper path through another parent.
+    public void setPath(int i, int g, int parentIndex, int act)
+    {
+        int at = i*stride;
+        buffer.putInt(at+cost, g);
+        buffer.putInt(at+parent, parentIndex);
+        buffer.put(at+action, (byte)act);
+    }
+
+    public boolean isClosed(int i)
+    {
+        return (buffer.get(i*stride+flags) & CLOSED) != 0;
+    }
+
+    public void setClosed(int i, boolean closed)
+    {
+        int at = i*stride+flags;
+        buffer.put(at, (byte)(closed ? buffer.get(at) | CLOSED
+                : buffer.get(at) & ~CLOSED));
+    }
+
+    //Prints the path to record i in the same form as Node.printPath.
+    public void printPath(int i)
+    {
+        int length = 0;
+        for( int n = i; n >= 0; n = getParent(n) )
+            length++;
+        int[] path = new int[length];
+        for( int n = i; n >= 0; n = getParent(n) )
+            path[--length] = n;
+
+        System.out.println( "Path: ");
+        int counter = 0;
+        for( int k = 0; k < path.length; k++ )
+        {
+            //Only print ten actions in each line.
+            counter=(counter+1)%10;
+            int act = getAction(path[k]);
+            System.out.print( (act < 0 ? "START" : ACTION_NAMES[act]) 
+                    + ", " );
+            if(counter%10==0)
+                System.out.print("\n");
+        }
+        System.out.print( "GOAL\n" );
+        System.out.printf( "Path-Cost: %.1f\n", getCost(i)/10.0);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * File:   OpenList.java
+ * Author: Alain Chen
+ *
+ * The fringe of an A* search that keeps one node per state.
+ * Nodes come out lowest f-score first, and among equal f-scores the
+ * one with the highest path cost first. A node in the list can be
+ * taken out again, so its cost can be lowered and the node put back.
+ *
+ */
+package BasicAISearches;
+
+public interface OpenList {
+
+    void add(Node n);
+
+    //Removes and returns the first node.
+    Node poll();
+
+    Node peek();
+
+    //Takes a node out of the list. Its cost must not have changed
+    //since it was added.
+    void remove(Node n);
+
+    boolean contains(Node n);
+
+    boolean isEmpty();
+
+    int size();
+
+    void clear();
+}
@@ -0,0 +1,219 @@
+/*
+ * File:   ParallelAStar.java
+ * Author: Alain Chen
+ *
+ * This class implements hash-distributed A* (HDA*).
+ * The states are split between the worker threads by hash, and every
+ * worker has its own open and closed lists for the states it owns.
+ * A worker expands its own nodes and sends each successor to the owner
+ * of the successor's state, in batches through lock-free queues.
+ *
+ * A goal found by one worker is only an upper bound on the optimal cost.
+ * The search goes on until no worker has a node with a lower f-score and
+ * no batch is still on its way, so the returned solution is optimal.
+ *
+ */
+package BasicAISearches;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParallelAStar {
+
+    //Successors sent to one worker are grouped into batches this big.
+    private static final int BATCH_SIZE = 64;
+    //Partly filled batches are sent after this many expansions, so that
+    //good nodes do not wait in a busy worker's outbox.
+    private static final int FLUSH_INTERVAL = 256;
+    private static final double EPS = 1e-9;
+
+    private final Worker[] workers;
+    //Workers that are busy plus batches sent and not yet processed.
+    //When it reaches zero nothing can create more work.
+    private final AtomicLong pending;
+    private volatile double bestCost;
+    private Node bestGoal;
+
+    public ParallelAStar(int numWorkers)
+    {
+        workers = new Worker[numWorkers];
+        pending = new AtomicLong();
+    }
+
+    //Returns the goal node of a cheapest solution, or null if there is none.
+    public Node search(Node root)
+    {
+        bestCost = Double.POSITIVE_INFINITY;
+        bestGoal = null;
+        int words = root.getDirt().length;
+        for( int i = 0; i < workers.length; i++ )
+            workers[i] = new Worker(words);
+        workers[owner(root)].receive(root);
+        pending.set(workers.length);
+
+        Thread[] threads = new Thread[workers.length];
+        for( int i = 0; i < workers.length; i++ )
+        {
+            threads[i] = new Thread(workers[i], "hda-worker-" + i);
+            threads[i].start();
+        }
+        for( int i = 0; i < workers.length; i++ )
+        {
+            try
+            {
+                threads[i].join();
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        synchronized(this)
+        {
+            return bestGoal;
+        }
+    }
+
+    public long getNodesExpanded()
+    {
+        long total = 0;
+        for( Worker w : workers )
+            total += w.expanded;
+        return total;
+    }
+
+    public long getNodesReopened()
+    {
+        long total = 0;
+        for( Worker w : workers )
+            total += w.reopened;
+        return total;
+    }
+
+    //The worker that owns the state of a node. Uses the high bits of
+    //the hash, since the tables inside a worker use the low bits.
+    private int owner(Node n)
+    {
+        int h = StateTable.hash(n.getDirt(), n.position());
+        return (int)(((h & 0xFFFFFFFFL) * workers.length) >>> 32);
+    }
+
+    private synchronized void offerGoal(Node goal)
+    {
+        if( goal.getCost() < bestCost )
+        {
+            bestGoal = goal;
+            bestCost = goal.getCost();
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        final ConcurrentLinkedQueue<ArrayList<Node>> inbox;
+        final IndexedHeap fringe;
+        final StateTable index;
+        final ArrayList<Node> nodes;
+        final ArrayList<ArrayList<Node>> outbox;
+        long expanded;
+        long reopened;
+
+        Worker(int words)
+        {
+            inbox = new ConcurrentLinkedQueue<ArrayList<Node>>();
+            fringe = new IndexedHeap();
+            index = new StateTable(words);
+            nodes = new ArrayList<Node>();
+            outbox = new ArrayList<ArrayList<Node>>();
+            for( int i = 0; i < workers.length; i++ )
+                outbox.add(new ArrayList<Node>(BATCH_SIZE));
+        }
+
+        @Override
+        public void run()
+        {
+            while( true )
+            {
+                drainInbox();
+                if( !fringe.isEmpty()
+                        && fringe.peek().fScore() < bestCost-EPS )
+                {
+                    expand(fringe.poll());
+                    if( expanded % FLUSH_INTERVAL == 0 )
+                        flushAll();
+                    continue;
+                }
+
+                //Nothing useful to expand. Send what is left and wait
+                //for more work or for the whole search to finish.
+                flushAll();
+                pending.decrementAndGet();
+                while( inbox.isEmpty() )
+                {
+                    if( pending.get() == 0 )
+                        return;
+                    Thread.yield();
+                }
+                pending.incrementAndGet();
+            }
+        }
+
+        void drainInbox()
+        {
+            ArrayList<Node> batch;
+            while( (batch = inbox.poll()) != null )
+            {
+                for( int i = 0; i < batch.size(); i++ )
+                    receive(batch.get(i));
+                pending.decrementAndGet();
+            }
+        }
+
+        void receive(Node n)
+        {
+            reopened += Node.addToFringe(n, fringe, index, nodes);
+        }
+
+        void expand(Node node)
+        {
+            expanded++;
+            if( node.goalTest() )
+            {
+                offerGoal(node);
+                return;
+            }
+            for( int a = 0; a < Node.NUM_ACTIONS; a++ )
+            {
+                Node n = node.successor(a);
+                if( n == null || n.fScore() >= bestCost-EPS )
+                    continue;
+                int o = owner(n);
+                if( workers[o] == this )
+                {
+                    receive(n);
+                    continue;
+                }
+                ArrayList<Node> batch = outbox.get(o);
+                batch.add(n);
+                if( batch.size() >= BATCH_SIZE )
+                    flush(o);
+            }
+        }
+
+        void flush(int o)
+        {
+            ArrayList<Node> batch = outbox.get(o);
+            if( batch.isEmpty() )
+                return;
+            pending.incrementAndGet();
+            workers[o].inbox.add(batch);
+            outbox.set(o, new ArrayList<Node>(BATCH_SIZE));
+        }
+
+        void flushAll()
+        {
+            for( int o = 0; o < workers.length; o++ )
+                flush(o);
+        }
+    }
+}
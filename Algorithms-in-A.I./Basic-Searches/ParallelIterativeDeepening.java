@@ -0,0 +1,184 @@
+/*
+ * File:   ParallelIterativeDeepening.java
+ * Author: Alain Chen
+ *
+ * This class runs iterative deepening tree search on a ForkJoinPool.
+ * In each depth-limited search the nodes near the root are split into
+ * tasks, one per child, down to a split depth. Below it every task
+ * searches its subtree with a plain recursive depth-limited search,
+ * and idle threads steal the tasks that are left.
+ *
+ * Every task counts its own expansions and a parent adds up the counts
+ * of its children when it joins them, so no counter is shared.
+ *
+ */
+package BasicAISearches;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ParallelIterativeDeepening {
+
+    //The clock is read once every this many nodes.
+    private static final int CLOCK_INTERVAL = 4096;
+
+    private final ForkJoinPool pool;
+    private final int splitDepth;
+    private final AtomicReference<Node> solution;
+    private volatile boolean timedOut;
+    private long deadline;
+    private long nodesExpanded;
+    private int depthReached;//Limit of the last depth-limited search.
+
+    //Nodes above splitDepth have each child searched as its own task.
+    public ParallelIterativeDeepening(ForkJoinPool pool, int splitDepth)
+    {
+        this.pool = pool;
+        this.splitDepth = splitDepth;
+        solution = new AtomicReference<Node>();
+    }
+
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    //The depth limit of the last depth-limited search that was started.
+    public int getDepthReached()
+    {
+        return depthReached;
+    }
+
+    //The goal found by the last search, or null.
+    public Node getSolution()
+    {
+        return solution.get();
+    }
+
+    //Runs depth-limited searches with growing limits until one finds a
+    //goal, one fails without reaching its limit, or time runs out.
+    public ProblemState search(Node root, long timeLimitNanos)
+    {
+        solution.set(null);
+        timedOut = false;
+        nodesExpanded = 0;
+        deadline = System.nanoTime() + timeLimitNanos;
+        for( int depth = 0; depth < 10000; depth++ )
+        {
+            depthReached = depth;
+            DLSTask task = new DLSTask(root, depth);
+            ProblemState s = pool.invoke(task);
+            nodesExpanded += task.expanded;
+            if( timedOut )
+                return ProblemState.FAILURE;
+            if( s != ProblemState.CUTOFF )
+                return s;
+        }
+        return ProblemState.FAILURE;
+    }
+
+    private class DLSTask extends RecursiveTask<ProblemState> {
+
+        private static final long serialVersionUID = 1L;
+        final Node node;
+        final int limit;
+        long expanded;
+
+        DLSTask(Node node, int limit)
+        {
+            this.node = node;
+            this.limit = limit;
+        }
+
+        @Override
+        protected ProblemState compute()
+        {
+            if( node.getDepth() >= splitDepth )
+                return recursiveDLS(node);
+            if( solution.get() != null || timedOut )
+                return ProblemState.FAILURE;
+            if( node.goalTest() )
+            {
+                solution.compareAndSet(null, node);
+                return ProblemState.SOL_FOUND;
+            }
+            if( node.getDepth() == limit )
+                return ProblemState.CUTOFF;
+            expanded++;
+
+            //Children in the same order as the sequential search.
+            DLSTask[] tasks = new DLSTask[Node.NUM_ACTIONS];
+            for( int a = Node.NUM_ACTIONS-1; a >= 0; a-- )
+            {
+                Node n = node.successor(a);
+                if( n != null )
+                    tasks[a] = new DLSTask(n, limit);
+            }
+            for( int a = 0; a < Node.NUM_ACTIONS; a++ )
+                if( tasks[a] != null )
+                    tasks[a].fork();
+
+            boolean reachedCutoff = false;
+            boolean found = false;
+            for( int a = Node.NUM_ACTIONS-1; a >= 0; a-- )
+            {
+                DLSTask t = tasks[a];
+                if( t == null )
+                    continue;
+                //Once a goal is found the siblings are not needed.
+                //A task that was cancelled before it ran is skipped,
+                //and one already running stops at its next node.
+                if( found && t.cancel(false) )
+                    continue;
+                ProblemState result = t.join();
+                expanded += t.expanded;
+                if( result == ProblemState.SOL_FOUND )
+                    found = true;
+                else if( result == ProblemState.CUTOFF )
+                    reachedCutoff = true;
+            }
+            if( found )
+                return ProblemState.SOL_FOUND;
+            if( reachedCutoff )
+                return ProblemState.CUTOFF;
+            return ProblemState.FAILURE;
+        }
+
+        //Sequential depth-limited search of a subtree.
+        private ProblemState recursiveDLS(Node node)
+        {
+            if( solution.get() != null || timedOut )
+                return ProblemState.FAILURE;
+            if( node.goalTest() )
+            {
+                solution.compareAndSet(null, node);
+                return ProblemState.SOL_FOUND;
+            }
+            if( node.getDepth() == limit )
+                return ProblemState.CUTOFF;
+            expanded++;
+            if( expanded % CLOCK_INTERVAL == 0
+                    && System.nanoTime() > deadline )
+            {
+                timedOut = true;
+                return ProblemState.FAILURE;
+            }
+
+            boolean reachedCutoff = false;
+            for( int a = Node.NUM_ACTIONS-1; a >= 0; a-- )
+            {
+                Node n = node.successor(a);
+                if( n == null )
+                    continue;
+                ProblemState result = recursiveDLS(n);
+                if( result == ProblemState.CUTOFF )
+                    reachedCutoff = true;
+                else if( result != ProblemState.FAILURE )
+                    return result;
+            }
+            if( reachedCutoff )
+                return ProblemState.CUTOFF;
+            return ProblemState.FAILURE;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * File:   PatternDatabase.java
+ * Author: Alain Chen
+ *
+ * This class builds, saves and loads pattern databases for a room layout.
+ * A pattern is a subset of the tiles that start dirty. Its table holds,
+ * for every robot position and every subset of the pattern still dirty,
+ * the exact cost of cleaning those tiles while ignoring all other dirt.
+ * The tables are filled by one uniform-cost search backwards from the
+ * states where the pattern is clean, using reversed actions.
+ *
+ * Every table value is a lower bound on the real cost, so the largest
+ * value over all patterns is an admissible and consistent heuristic.
+ * The values can not be added up, since the patterns share the robot's
+ * moves between them.
+ *
+ * The file is a small header followed by one table of 16 bit costs in
+ * tenths per pattern. It is memory-mapped when loaded, so lookups read
+ * straight from the page cache and several processes share the pages.
+ *
+ */
+package BasicAISearches;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+public class PatternDatabase {
+
+    private static final int MAGIC = 0x50444231;//"PDB1"
+    //Step costs in tenths, so that table values are exact.
+    private static final int VERTICAL = 13, HORIZONTAL = 10;
+    private static final int UNREACHED = 0xFFFF;
+    //FileChannel.map takes at most this many bytes.
+    private static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+
+    private final int dirtWidth;
+    private final int dirtHeight;
+    private final int cells;//Number of tiles in the room.
+    private final int[][] patterns;//Bit index of each tile in a pattern.
+    private final int[] offsets;//Byte offset of each table in the buffer.
+    private final ByteBuffer buffer;
+
+    private PatternDatabase(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+        if( buffer.getInt(0) != MAGIC )
+            throw new IllegalArgumentException("Not a pattern database");
+        dirtWidth = buffer.getInt(4);
+        dirtHeight = buffer.getInt(8);
+        cells = (dirtWidth-1)*(dirtHeight-1);
+        int count = buffer.getInt(12);
+        patterns = new int[count][];
+        offsets = new int[count];
+        int at = 16;
+        for( int p = 0; p < count; p++ )
+        {
+            int k = buffer.getInt(at);
+            at += 4;
+            patterns[p] = new int[k];
+            for( int i = 0; i < k; i++, at += 4 )
+                patterns[p][i] = buffer.getInt(at);
+            offsets[p] = at;
+            at += 2*(1<<k)*cells;
+        }
+    }
+
+    //Maps a database file read-only.
+    public static PatternDatabase load(Path file) throws IOException
+    {
+        try( FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ) )
+        {
+            MappedByteBuffer map = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new PatternDatabase(map);
+        }
+    }
+
+    //Builds the databases for the tiles that are dirty in the given
+    //distribution, split into patterns of at most maxPatternSize tiles,
+    //and writes them to a file. Patterns whose tables would not fit in
+    //one mapped file are refused.
+    public static void build(ArrayList<ArrayList<Boolean>> dirt,
+            int maxPatternSize, Path file) throws IOException
+    {
+        if( maxPatternSize < 1 )
+            throw new IllegalArgumentException("Pattern size must be at "
+                    + "least 1: " + maxPatternSize);
+        int dirtHeight = dirt.size(), dirtWidth = dirt.get(1).size();
+        int cells = (dirtHeight-1)*(dirtWidth-1);
+        ArrayList<Integer> dirty = new ArrayList<Integer>();
+        for( int i = 1; i < dirtHeight; i++ )
+            for( int j = 1; j < dirtWidth; j++ )
+                if( dirt.get(i).get(j) )
+                    dirty.add((i-1)*(dirtWidth-1)+(j-1));
+
+        //Tiles are taken in row order, so each pattern is a compact
+        //group of nearby tiles.
+        int count = (dirty.size()+maxPatternSize-1)/maxPatternSize;
+        int[][] patterns = new int[count][];
+        long size = 16;
+        for( int p = 0; p < count && size <= MAX_FILE_SIZE; p++ )
+        {
+            int from = p*dirty.size()/count, to = (p+1)*dirty.size()/count;
+            patterns[p] = new int[to-from];
+            for( int i = from; i < to; i++ )
+                patterns[p][i-from] = dirty.get(i);
+            //A pattern of more than 30 tiles does not fit whatever the
+            //room, and the shift below would overflow.
+            size += patterns[p].length > 30 ? MAX_FILE_SIZE+1
+                    : 4 + 4*patterns[p].length
+                        + 2*(1L<<patterns[p].length)*cells;
+        }
+        if( size > MAX_FILE_SIZE )
+            throw new IllegalArgumentException("Patterns of up to "
+                    + maxPatternSize + " tiles need more than " 
+                    + MAX_FILE_SIZE + " bytes");
+
+        try( FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING) )
+        {
+            MappedByteBuffer map = channel.map(
+                    FileChannel.MapMode.READ_WRITE, 0, size);
+            map.putInt(MAGIC).putInt(dirtWidth).putInt(dirtHeight)
+                    .putInt(count);
+            for( int p = 0; p < count; p++ )
+            {
+                map.putInt(patterns[p].length);
+                for( int b : patterns[p] )
+                    map.putInt(b);
+                char[] table = backwardSearch(patterns[p], dirtWidth,
+                        dirtHeight);
+                for( char c : table )
+                    map.putChar(c);
+            }
+            map.force();
+        }
+    }
+
+    //Uniform-cost search from every state where the pattern is clean.
+    //State index is mask*cells + robot tile, where bit i of the mask is
+    //set if the i-th tile of the pattern is still dirty.
+    private static char[] backwardSearch(int[] pattern, int dirtWidth,
+            int dirtHeight)
+    {
+        int w = dirtWidth-1, h = dirtHeight-1, cells = w*h;
+        int[] index = new int[cells];//Position of a tile in the pattern.
+        Arrays.fill(index, -1);
+        for( int i = 0; i < pattern.length; i++ )
+            index[pattern[i]] = i;
+
+        char[] dist = new char[(1<<pattern.length)*cells];
+        Arrays.fill(dist, (char)UNREACHED);
+        //Entries are cost<<32 | state.
+        PriorityQueue<Long> queue = new PriorityQueue<Long>();
+        for( int c = 0; c < cells; c++ )
+        {
+            dist[c] = 0;
+            queue.add((long)c);
+        }
+        while( !queue.isEmpty() )
+        {
+            long top = queue.poll();
+            int d = (int)(top>>>32), s = (int)top;
+            if( d != dist[s] )
+                continue;
+            int mask = s/cells, c = s%cells;
+            int row = c/w, col = c%w;
+            //A move is its own reverse with the same cost.
+            if( row > 0 )
+                relax(dist, queue, s-w, d+VERTICAL);
+            if( row < h-1 )
+                relax(dist, queue, s+w, d+VERTICAL);
+            if( col > 0 )
+                relax(dist, queue, s-1, d+HORIZONTAL);
+            if( col < w-1 )
+                relax(dist, queue, s+1, d+HORIZONTAL);
+            //Reversed suck: the tile under the robot was dirty before.
+            int i = index[c];
+            if( i >= 0 && (mask & (1<<i)) == 0 )
+                relax(dist, queue, s+(1<<i)*cells, d);
+        }
+        return dist;
+    }
+
+    private static void relax(char[] dist, PriorityQueue<Long> queue,
+            int s, int d)
+    {
+        if( d < dist[s] && d < UNREACHED )
+        {
+            dist[s] = (char)d;
+            queue.add(((long)d<<32) | s);
+        }
+    }
+
+    //The largest table value for the state, or 0 if the database
+    //was built for a room of another width.
+    public double lookup(long[] dirt, int dirtWidth, int robotPosX,
+            int robotPosY)
+    {
+        if( dirtWidth != this.dirtWidth || robotPosX >= dirtHeight )
+            return 0;
+        int robot = (robotPosX-1)*(dirtWidth-1)+(robotPosY-1);
+        int best = 0;
+        for( int p = 0; p < patterns.length; p++ )
+        {
+            int[] pattern = patterns[p];
+            int mask = 0;
+            for( int i = 0; i < pattern.length; i++ )
+            {
+                int b = pattern[i];
+                if( (b>>>6) < dirt.length && (dirt[b>>>6] & (1L<<b)) != 0 )
+                    mask |= 1<<i;
+            }
+            int value = buffer.getChar(offsets[p] + 2*(mask*cells+robot));
+            if( value != UNREACHED && value > best )
+                best = value;
+        }
+        return best/10.0;
+    }
+
+    //Builds a database for one of the fixed problems.
+    //Arguments: FOUR_BY_FOUR or FIVE_BY_SIX, the output file, and
+    //optionally the most tiles in one pattern (default 14).
+    public static void main(String[] args) throws IOException
+    {
+        Problem p = Problem.valueOf(args[0]);
+        int maxPatternSize = args.length > 2 ? Integer.parseInt(args[2]) : 14;
+        long time = System.nanoTime();
+        build(p == Problem.FOUR_BY_FOUR ? Searches.generateFourByFour()
+                : Searches.generateFiveBySix(), maxPatternSize,
+                Paths.get(args[1]));
+        System.out.printf("Built %s in %.2f ms\n", args[1],
+                (double)(System.nanoTime() - time)/1000000);
+    }
+}
@@ -2,5 +2,15 @@ package BasicAISearches;
 
 //Enumerate the different problems.
 public enum Problem {
-    FOUR_BY_FOUR, FIVE_BY_SIX
+    FOUR_BY_FOUR, FIVE_BY_SIX;
+
+    //The room of the problem, with the robot starting at (3,2).
+    public RoomInstance instance()
+    {
+        if( this == FOUR_BY_FOUR )
+            return RoomInstance.fromDistribution(name(),
+                    Searches.generateFourByFour(), 3, 2);
+        return RoomInstance.fromDistribution(name(),
+                Searches.generateFiveBySix(), 3, 2);
+    }
 }
@@ -0,0 +1,4 @@
+package BasicAISearches;
+
+//Outcome of a search.
+enum ProblemState { SOL_FOUND, FAILURE, CUTOFF };
@@ -0,0 +1,228 @@
+/*
+ * File:   RealTimeAgent.java
+ * Author: Alain Chen
+ *
+ * This class is a real-time agent in the manner of LSS-LRTA*. For each
+ * move it runs A* from its current state for a fixed number of
+ * expansions, learns better heuristic values for the states it expanded,
+ * and takes one action. Every move costs about the same, however far
+ * the goal is.
+ *
+ * The learned values are kept in a StateTable, in tenths, so they carry
+ * over between moves and between trials. A learned value is never below
+ * Node's heuristic, and never above the true cost, so the agent reaches
+ * the goal in every trial and its path cost settles at the optimum over
+ * repeated trials.
+ *
+ */
+package BasicAISearches;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+public class RealTimeAgent {
+
+    //Step cost of each action in tenths, by action code.
+    private static final int[] STEP_COST = { 13, 10, 0, 10, 13 };
+
+    private final int lookahead;
+    private final StateTable learned;
+    private long nodesExpanded;
+    private int moves;
+
+    //Each move expands at most lookahead nodes. Rooms with the given
+    //number of dirt words can be searched.
+    public RealTimeAgent(int lookahead, int words)
+    {
+        if( lookahead < 1 )
+            throw new IllegalArgumentException("Lookahead below 1: "
+                    + lookahead);
+        this.lookahead = lookahead;
+        learned = new StateTable(words);
+    }
+
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    public int getMoves()
+    {
+        return moves;
+    }
+
+    //Number of states with a learned value.
+    public int getLearnedStates()
+    {
+        return learned.size();
+    }
+
+    //The heuristic of a state in tenths, learned or from Node.
+    private int h(Node n)
+    {
+        int v = learned.get(n.getDirt(), n.position());
+        return v >= 0 ? v : n.hTenths();
+    }
+
+    //Moves from the start until the room is clean or maxMoves actions
+    //were taken. Returns the last node reached, whose path is the trial.
+    public Node runTrial(Node start, int maxMoves)
+    {
+        Node n = start;
+        for( int i = 0; i < maxMoves && !n.goalTest(); i++ )
+            n = n.successor(decide(n));
+        return n;
+    }
+
+    //Looks ahead from the current node, learns, and returns the action
+    //to take, or -1 if the room is already clean.
+    public int decide(Node current)
+    {
+        if( current.goalTest() )
+            return -1;
+        moves++;
+
+        //A* limited to lookahead expansions. Each local node keeps its
+        //successors so values can be passed back along the edges.
+        ArrayList<Node> local = new ArrayList<Node>();
+        ArrayList<int[]> successors = new ArrayList<int[]>();
+        StateTable index = new StateTable(current.getDirt().length,
+                8*lookahead);
+        ArrayList<Integer> g = new ArrayList<Integer>();
+        PriorityQueue<long[]> open = new PriorityQueue<long[]>(
+                (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+                        : Long.compare(b[1], a[1]));
+        index.put(current.getDirt(), current.position(), 0);
+        local.add(current);
+        successors.add(null);
+        g.add(0);
+        open.add(new long[] { h(current), 0, 0 });
+        boolean[] closed = new boolean[8*lookahead+8];
+        int expanded = 0;
+        while( !open.isEmpty() && expanded < lookahead )
+        {
+            long[] top = open.poll();
+            int id = (int)top[2];
+            if( closed[id] || top[1] != g.get(id) )
+                continue;
+            Node node = local.get(id);
+            if( node.goalTest() )
+            {
+                open.add(top);//Keep it on the frontier.
+                break;
+            }
+            closed[id] = true;
+            expanded++;
+            int[] succ = new int[Node.NUM_ACTIONS];
+            Arrays.fill(succ, -1);
+            for( int a = Node.NUM_ACTIONS-1; a >= 0; a-- )
+            {
+                Node n = node.successor(a);
+                if( n == null )
+                    continue;
+                int cost = g.get(id) + STEP_COST[a];
+                int sid = index.get(n.getDirt(), n.position());
+                if( sid < 0 )
+                {
+                    sid = local.size();
+                    index.put(n.getDirt(), n.position(), sid);
+                    local.add(n);
+                    successors.add(null);
+                    g.add(cost);
+                    if( sid >= closed.length )
+                        closed = Arrays.copyOf(closed, 2*sid);
+                }
+                else if( closed[sid] || cost >= g.get(sid) )
+                {
+                    succ[a] = sid;
+                    continue;
+                }
+                g.set(sid, cost);
+                succ[a] = sid;
+                open.add(new long[] { cost + h(n), cost, sid });
+            }
+            successors.set(id, succ);
+        }
+        nodesExpanded += expanded;
+
+        learn(local, successors, closed);
+
+        //Take the action with the lowest step cost plus value.
+        int best = -1;
+        long bestValue = Long.MAX_VALUE;
+        for( int a = Node.NUM_ACTIONS-1; a >= 0; a-- )
+        {
+            Node n = current.successor(a);
+            if( n == null )
+                continue;
+            long v = STEP_COST[a] + h(n);
+            if( v < bestValue )
+            {
+                bestValue = v;
+                best = a;
+            }
+        }
+        return best;
+    }
+
+    //Dijkstra backwards from the frontier of the local search: every
+    //expanded state learns the cheapest cost of reaching the frontier
+    //plus the frontier state's value.
+    private void learn(ArrayList<Node> local, ArrayList<int[]> successors,
+            boolean[] closed)
+    {
+        int size = local.size();
+        //Edges into each state, as (from, action) pairs.
+        ArrayList<ArrayList<int[]>> into = new ArrayList<ArrayList<int[]>>();
+        for( int i = 0; i < size; i++ )
+            into.add(new ArrayList<int[]>(2));
+        for( int i = 0; i < size; i++ )
+        {
+            int[] succ = successors.get(i);
+            if( succ == null || !closed[i] )
+                continue;
+            for( int a = 0; a < succ.length; a++ )
+                if( succ[a] >= 0 )
+                    into.get(succ[a]).add(new int[] { i, a });
+        }
+
+        long[] value = new long[size];
+        PriorityQueue<long[]> queue = new PriorityQueue<long[]>(
+                (a, b) -> Long.compare(a[0], b[0]));
+        for( int i = 0; i < size; i++ )
+        {
+            if( closed[i] )
+                value[i] = Long.MAX_VALUE;
+            else
+            {
+                value[i] = h(local.get(i));
+                queue.add(new long[] { value[i], i });
+            }
+        }
+        while( !queue.isEmpty() )
+        {
+            long[] top = queue.poll();
+            int u = (int)top[1];
+            if( top[0] != value[u] )
+                continue;
+            for( int[] edge : into.get(u) )
+            {
+                int from = edge[0];
+                long v = value[u] + STEP_COST[edge[1]];
+                if( v < value[from] )
+                {
+                    value[from] = v;
+                    queue.add(new long[] { v, from });
+                }
+            }
+        }
+        for( int i = 0; i < size; i++ )
+        {
+            if( !closed[i] || value[i] == Long.MAX_VALUE )
+                continue;
+            Node n = local.get(i);
+            if( value[i] > h(n) )
+                learned.put(n.getDirt(), n.position(), (int)value[i]);
+        }
+    }
+}
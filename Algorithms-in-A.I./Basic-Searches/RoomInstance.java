@@ -0,0 +1,168 @@
+/*
+ * File:   RoomInstance.java
+ * Author: Alain Chen
+ *
+ * This class describes one vacuum world problem: the size of the room,
+ * where the robot starts, which tiles are dirty and which are blocked by
+ * furniture. A room with blocked tiles gets a DistanceOracle, made once
+ * here and shared by every search of the room.
+ * Rows and columns count from 1, as in Node, and the dirt is packed the
+ * same way Node packs it.
+ *
+ */
+package BasicAISearches;
+import java.util.ArrayList;
+
+public class RoomInstance {
+
+    private final String id;
+    private final int rows;
+    private final int cols;
+    private final int startRow;
+    private final int startCol;
+    private final long[] dirt;
+    private final DistanceOracle oracle;//Null if no tile is blocked.
+
+    //dirtyTiles holds the row and column of each dirty tile.
+    public RoomInstance(String id, int rows, int cols, int startRow,
+            int startCol, int[][] dirtyTiles)
+    {
+        this(id, rows, cols, startRow, startCol, dirtyTiles, new int[0][]);
+    }
+
+    //blockedTiles holds the row and column of each blocked tile. The
+    //start and the dirty tiles must be free, and every dirty tile must
+    //be reachable from the start.
+    public RoomInstance(String id, int rows, int cols, int startRow,
+            int startCol, int[][] dirtyTiles, int[][] blockedTiles)
+    {
+        if( rows < 1 || cols < 1 )
+            throw new IllegalArgumentException("Empty room " + rows + "x" 
+                    + cols);
+        checkTile(rows, cols, startRow, startCol);
+        this.id = id;
+        this.rows = rows;
+        this.cols = cols;
+        this.startRow = startRow;
+        this.startCol = startCol;
+        dirt = new long[(rows*cols+63)/64];
+        for( int[] tile : dirtyTiles )
+        {
+            checkTile(rows, cols, tile[0], tile[1]);
+            int b = (tile[0]-1)*cols+(tile[1]-1);
+            dirt[b>>>6] |= 1L<<b;
+        }
+        if( blockedTiles.length == 0 )
+        {
+            oracle = null;
+            return;
+        }
+        oracle = new DistanceOracle(rows, cols, blockedTiles);
+        if( oracle.isBlocked(startRow, startCol) )
+            throw new IllegalArgumentException("The start (" + startRow 
+                    + "," + startCol + ") is blocked");
+        for( int[] tile : dirtyTiles )
+        {
+            if( oracle.isBlocked(tile[0], tile[1]) )
+                throw new IllegalArgumentException("Dirty tile (" + tile[0]
+                        + "," + tile[1] + ") is blocked");
+            if( oracle.distance(startRow, startCol, tile[0], tile[1]) 
+                    == DistanceOracle.UNREACHABLE )
+                throw new IllegalArgumentException("Dirty tile (" + tile[0]
+                        + "," + tile[1] + ") can not be reached");
+        }
+    }
+
+    private RoomInstance(String id, int rows, int cols, int startRow,
+            int startCol, long[] dirt)
+    {
+        this.id = id;
+        this.rows = rows;
+        this.cols = cols;
+        this.startRow = startRow;
+        this.startCol = startCol;
+        this.dirt = dirt;
+        oracle = null;
+    }
+
+    //Make an instance from a padded distribution like the ones in
+    //Searches, where row and column 0 are unused.
+    public static RoomInstance fromDistribution(String id,
+            ArrayList<ArrayList<Boolean>> dirt, int startRow, int startCol)
+    {
+        int rows = dirt.size()-1, cols = dirt.get(1).size()-1;
+        checkTile(rows, cols, startRow, startCol);
+        return new RoomInstance(id, rows, cols, startRow, startCol,
+                Node.packDirt(dirt));
+    }
+
+    //The same room with the given tiles blocked as well.
+    public RoomInstance withBlocked(int[][] blockedTiles)
+    {
+        ArrayList<int[]> dirty = new ArrayList<int[]>();
+        for( int w = 0; w < dirt.length; w++ )
+            for( long bits = dirt[w]; bits != 0; bits &= bits-1 )
+            {
+                int b = (w<<6) + Long.numberOfTrailingZeros(bits);
+                dirty.add(new int[] { b/cols+1, b%cols+1 });
+            }
+        ArrayList<int[]> blocked = new ArrayList<int[]>();
+        for( int t = 0; oracle != null && t < rows*cols; t++ )
+            if( oracle.isBlocked(t/cols+1, t%cols+1) )
+                blocked.add(new int[] { t/cols+1, t%cols+1 });
+        for( int[] tile : blockedTiles )
+            blocked.add(tile);
+        return new RoomInstance(id, rows, cols, startRow, startCol,
+                dirty.toArray(new int[0][]), blocked.toArray(new int[0][]));
+    }
+
+    private static void checkTile(int rows, int cols, int row, int col)
+    {
+        if( row < 1 || row > rows || col < 1 || col > cols )
+            throw new IllegalArgumentException("Tile (" + row + "," + col 
+                    + ") is outside a " + rows + "x" + cols + " room");
+    }
+
+    //Make the start node of a search.
+    public Node createRoot()
+    {
+        return Node.root(dirt, cols+1, rows+1, startRow, startCol, oracle);
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public int getRows()
+    {
+        return rows;
+    }
+
+    public int getCols()
+    {
+        return cols;
+    }
+
+    public int getStartRow()
+    {
+        return startRow;
+    }
+
+    public int getStartCol()
+    {
+        return startCol;
+    }
+
+    public long[] getDirt()
+    {
+        return dirt.clone();
+    }
+
+    //The blocked tiles and the walks around them, or null if no tile
+    //is blocked.
+    public DistanceOracle getOracle()
+    {
+        return oracle;
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * File:   SearchCheckpoint.java
+ * Author: Alain Chen
+ *
+ * This class saves the progress of a long IDS or DFGS run to disk, so it
+ * can be resumed after the process stops. A checkpoint of IDS is the
+ * depth limit and the actions from the root to the node being visited:
+ * the children are always tried in the same order, so every subtree left
+ * of that path is known to be done. A checkpoint of DFGS is the fringe,
+ * as a tree of actions from the root, and the seen states.
+ *
+ * The search thread only copies what it needs into a buffer, which for
+ * IDS is a few bytes, and a background thread writes it. The checkpoint
+ * file is written to a temporary file and moved over the old one, so a
+ * crash leaves the last complete checkpoint. The seen states of DFGS only
+ * grow, so each checkpoint appends the new ones to a log next to the
+ * file, and the checkpoint records how many log records it covers. If
+ * the writer is still busy when the next checkpoint is due, that one is
+ * skipped rather than waited for.
+ *
+ */
+package BasicAISearches;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SearchCheckpoint implements AutoCloseable {
+
+    public static final byte IDS = 0, DFGS = 1;
+    private static final int MAGIC = 0x56434B50;//"VCKP"
+    private static final byte VERSION = 1;
+
+    private final Path file;
+    private final Path seenLog;
+    private final Problem problem;
+    private final long interval;
+    private final int words;
+    private final ExecutorService writer;
+    private Future<?> pending;
+    private long nextWrite;
+    private ByteBuffer seenDelta;//Seen states not handed to the writer.
+    private long seenRecords;//Seen states handed to the writer.
+    private int written;
+
+    //Writes checkpoints of a search of the problem to file, at most once
+    //every intervalNanos.
+    public SearchCheckpoint(Path file, Problem problem, long intervalNanos)
+    {
+        this(file, problem, intervalNanos, 0);
+    }
+
+    private SearchCheckpoint(Path file, Problem problem, long intervalNanos,
+            long seenRecords)
+    {
+        this.file = file;
+        seenLog = file.resolveSibling(file.getFileName() + ".seen");
+        this.problem = problem;
+        interval = intervalNanos;
+        words = problem.instance().getDirt().length;
+        this.seenRecords = seenRecords;
+        seenDelta = ByteBuffer.allocate(1024*recordSize());
+        nextWrite = System.nanoTime() + interval;
+        writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    //Carries on writing to the file of a checkpoint that was read.
+    public SearchCheckpoint(Path file, Saved from, long intervalNanos)
+    {
+        this(file, from.problem, intervalNanos, from.seenRecords);
+    }
+
+    //Number of checkpoints written so far.
+    public int getCheckpointsWritten()
+    {
+        return written;
+    }
+
+    private int recordSize()
+    {
+        return 8*words + 4;
+    }
+
+    //Whether a checkpoint should be taken now.
+    public boolean due()
+    {
+        return System.nanoTime() - nextWrite >= 0;
+    }
+
+    //IDS is visiting node, with the given depth limit. cutoffSeen tells
+    //whether this iteration reached the limit anywhere yet.
+    public void saveIterativeDeepening(Node node, int limit,
+            boolean cutoffSeen, long nodesExpanded, long elapsedNanos)
+    {
+        if( busy() )
+            return;
+        ArrayList<Integer> actions = new ArrayList<Integer>();
+        for( Node n = node; n.getParent() != null; n = n.getParent() )
+            actions.add(n.getActionCode());
+        ByteBuffer b = header(IDS, nodesExpanded, elapsedNanos,
+                9 + actions.size());
+        b.putInt(limit);
+        b.put((byte)(cutoffSeen ? 1 : 0));
+        b.putInt(actions.size());
+        for( int i = actions.size()-1; i >= 0; i-- )
+            b.put((byte)(int)actions.get(i));
+        submit(b);
+    }
+
+    //Adds a state DFGS put in its seen table to the next checkpoint.
+    public void recordSeen(Node n)
+    {
+        if( seenDelta.remaining() < recordSize() )
+        {
+            ByteBuffer bigger = ByteBuffer.allocate(2*seenDelta.capacity());
+            seenDelta.flip();
+            bigger.put(seenDelta);
+            seenDelta = bigger;
+        }
+        long[] dirt = n.getDirt();
+        for( int w = 0; w < words; w++ )
+            seenDelta.putLong(dirt[w]);
+        seenDelta.putInt(n.position());
+    }
+
+    //Saves the fringe of DFGS, bottom first. Every node on it leads back
+    //to the root through its parents.
+    public void saveDepthFirst(Stack<Node> fringe, long nodesExpanded,
+            long elapsedNanos)
+    {
+        if( busy() )
+            return;
+        //Number the nodes on the fringe and their ancestors, parents
+        //before their children.
+        IdentityHashMap<Node, Integer> ids = new IdentityHashMap<Node, Integer>();
+        ArrayList<Node> tree = new ArrayList<Node>();
+        ArrayList<Node> chain = new ArrayList<Node>();
+        for( Node n : fringe )
+        {
+            chain.clear();
+            for( Node a = n; a != null && !ids.containsKey(a);
+                    a = a.getParent() )
+                chain.add(a);
+            for( int i = chain.size()-1; i >= 0; i-- )
+            {
+                ids.put(chain.get(i), tree.size());
+                tree.add(chain.get(i));
+            }
+        }
+        ByteBuffer b = header(DFGS, nodesExpanded, elapsedNanos,
+                16 + 5*tree.size() + 4*fringe.size());
+        b.putLong(seenRecords + seenDelta.position()/recordSize());
+        b.putInt(tree.size());
+        for( Node n : tree )
+        {
+            b.putInt(n.getParent() == null ? -1 : ids.get(n.getParent()));
+            b.put((byte)n.getActionCode());
+        }
+        b.putInt(fringe.size());
+        for( Node n : fringe )
+            b.putInt(ids.get(n));
+        submit(b);
+    }
+
+    private ByteBuffer header(byte kind, long nodesExpanded,
+            long elapsedNanos, int body)
+    {
+        byte[] name = problem.name().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer b = ByteBuffer.allocate(24 + name.length + body);
+        b.putInt(MAGIC);
+        b.put(VERSION);
+        b.put(kind);
+        b.putShort((short)name.length);
+        b.put(name);
+        b.putLong(nodesExpanded);
+        b.putLong(elapsedNanos);
+        return b;
+    }
+
+    //Whether the last checkpoint is still being written. A failed write
+    //is reported and the search goes on.
+    private boolean busy()
+    {
+        if( pending == null )
+            return false;
+        if( !pending.isDone() )
+            return true;
+        sync();
+        return false;
+    }
+
+    //Hands a checkpoint and the seen states since the last one to the
+    //writer thread.
+    private void submit(ByteBuffer snapshot)
+    {
+        snapshot.flip();
+        final ByteBuffer seen = seenDelta;
+        seen.flip();
+        seenRecords += seen.remaining()/recordSize();
+        seenDelta = ByteBuffer.allocate(seen.capacity());
+        nextWrite = System.nanoTime() + interval;
+        written++;
+        pending = writer.submit(() -> {
+            write(seen, snapshot);
+            return null;
+        });
+    }
+
+    private void write(ByteBuffer seen, ByteBuffer snapshot)
+            throws IOException
+    {
+        if( seen.hasRemaining() )
+            try( FileChannel log = FileChannel.open(seenLog,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND) )
+            {
+                while( seen.hasRemaining() )
+                    log.write(seen);
+                log.force(false);
+            }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try( FileChannel out = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING) )
+        {
+            while( snapshot.hasRemaining() )
+                out.write(snapshot);
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    //Waits for the last checkpoint to be written, so the next one is not
+    //skipped.
+    public void sync()
+    {
+        if( pending == null )
+            return;
+        try
+        {
+            pending.get();
+        }
+        catch( ExecutionException e )
+        {
+            System.out.println("Could not write checkpoint " + file + ": "
+                    + e.getCause());
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        pending = null;
+    }
+
+    @Override
+    public void close()
+    {
+        sync();
+        writer.shutdown();
+    }
+
+    //Removes the checkpoint and its log, once the search is over.
+    public void delete() throws IOException
+    {
+        close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(seenLog);
+    }
+
+    //Reads a checkpoint and, for DFGS, the seen states it covers.
+    public static Saved read(Path file) throws IOException
+    {
+        ByteBuffer b;
+        try( FileChannel in = FileChannel.open(file, StandardOpenOption.READ) )
+        {
+            b = ByteBuffer.allocate((int)in.size());
+            while( b.hasRemaining() && in.read(b) >= 0 )
+                ;
+        }
+        b.flip();
+        if( b.remaining() < 6 || b.getInt() != MAGIC || b.get() != VERSION )
+            throw new IOException(file + " is not a search checkpoint");
+        Saved s = new Saved();
+        s.kind = b.get();
+        byte[] name = new byte[b.getShort()];
+        b.get(name);
+        try
+        {
+            s.problem = Problem.valueOf(new String(name,
+                    StandardCharsets.US_ASCII));
+        }
+        catch( IllegalArgumentException e )
+        {
+            throw new IOException(file + " is for an unknown problem", e);
+        }
+        s.nodesExpanded = b.getLong();
+        s.elapsedNanos = b.getLong();
+        if( s.kind == IDS )
+        {
+            s.limit = b.getInt();
+            s.cutoffSeen = b.get() != 0;
+            s.path = new byte[b.getInt()];
+            b.get(s.path);
+            return s;
+        }
+
+        s.seenRecords = b.getLong();
+        Node root = s.problem.instance().createRoot();
+        Node[] tree = new Node[b.getInt()];
+        for( int i = 0; i < tree.length; i++ )
+        {
+            int parent = b.getInt();
+            int action = b.get();
+            tree[i] = parent < 0 ? root : tree[parent].successor(action);
+        }
+        s.fringe = new Stack<Node>();
+        for( int i = b.getInt(); i > 0; i-- )
+            s.fringe.push(tree[b.getInt()]);
+
+        //Records after the ones the checkpoint covers are from a write
+        //that did not finish, so they are cut off.
+        int words = root.getDirt().length, size = 8*words + 4;
+        Path seenLog = file.resolveSibling(file.getFileName() + ".seen");
+        s.seen = new StateTable(words, (int)Math.min(s.seenRecords,
+                1<<24));
+        try( FileChannel log = FileChannel.open(seenLog,
+                StandardOpenOption.READ, StandardOpenOption.WRITE) )
+        {
+            if( log.size() < s.seenRecords*size )
+                throw new IOException(seenLog + " is shorter than "
+                        + file + " says");
+            log.truncate(s.seenRecords*size);
+            ByteBuffer r = ByteBuffer.allocate(1024*size);
+            long[] dirt = new long[words];
+            for( long left = s.seenRecords; left > 0; )
+            {
+                r.clear();
+                r.limit((int)Math.min(r.capacity(), left*size));
+                while( r.hasRemaining() && log.read(r) >= 0 )
+                    ;
+                r.flip();
+                for( ; r.remaining() >= size; left-- )
+                {
+                    for( int w = 0; w < words; w++ )
+                        dirt[w] = r.getLong();
+                    s.seen.add(dirt, r.getInt());
+                }
+            }
+        }
+        return s;
+    }
+
+    //A checkpoint as read back.
+    public static final class Saved {
+
+        private byte kind;
+        private Problem problem;
+        private long nodesExpanded;
+        private long elapsedNanos;
+        private int limit;
+        private boolean cutoffSeen;
+        private byte[] path;
+        private Stack<Node> fringe;
+        private StateTable seen;
+        private long seenRecords;
+
+        private Saved()
+        {
+        }
+
+        //IDS or DFGS.
+        public byte getKind()
+        {
+            return kind;
+        }
+
+        public Problem getProblem()
+        {
+            return problem;
+        }
+
+        public long getNodesExpanded()
+        {
+            return nodesExpanded;
+        }
+
+        //Time the search had run before the checkpoint.
+        public long getElapsedNanos()
+        {
+            return elapsedNanos;
+        }
+
+        //The depth limit of the IDS iteration.
+        public int getLimit()
+        {
+            return limit;
+        }
+
+        public boolean getCutoffSeen()
+        {
+            return cutoffSeen;
+        }
+
+        //The actions from the root to the node IDS was visiting.
+        public byte[] getPath()
+        {
+            return path;
+        }
+
+        public Stack<Node> getFringe()
+        {
+            return fringe;
+        }
+
+        public StateTable getSeen()
+        {
+            return seen;
+        }
+    }
+}
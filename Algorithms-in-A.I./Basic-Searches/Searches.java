@@ -1,7 +1,12 @@
 package BasicAISearches;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.PriorityQueue;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 /* 
  * File:   main.cpp
  * Author: Alain Chen
@@ -14,16 +19,79 @@ import java.util.Stack;
  * 
  * Created on September 7, 2016, 3:47 PM
  */
-enum ProblemState { SOL_FOUND, FAILURE, CUTOFF };
 public class Searches {
 
     private static long nodesExpanded=0;
     private static long time;//Timer to keep track of program run time.
+    //Optional transposition table for IDS, null when not used.
+    private static TranspositionTable table;
+    private static final int CLOCK_INTERVAL = 4096;
+    private static long calls;//Calls of recursiveDLS, for the clock.
+    private static boolean timedOut;
+    //Optional checkpoint of IDS or DFGS, null when not used.
+    private static SearchCheckpoint checkpoint;
+    private static boolean cutoffSeen;//In this IDS iteration.
+    //Actions from the root to the node a resumed IDS iteration starts
+    //from. The children left of it on the way there are done.
+    private static byte[] resumePath;
+    private static final long CHECKPOINT_INTERVAL = 60L*1000000000;
+    //Time spent by the runs before a resumed search. It goes into its
+    //checkpoints and report, but each run gets the full hour.
+    private static long earlierNanos;
     /**
      * @param args the command line arguments
      */
     public static void main(String[] args) {        
         
+        //--resume and a checkpoint file carry on the search that wrote
+        //it, then stop.
+        if( args.length > 1 && args[0].equals("--resume") )
+        {
+            try
+            {
+                resume(Paths.get(args[1]), CHECKPOINT_INTERVAL);
+                System.out.println("Nodes expanded: " + nodesExpanded );
+            }
+            catch( IOException e )
+            {
+                System.out.println("Could not resume " + args[1] + ": " + e);
+            }
+            return;
+        }
+
+        //--parallel runs the IDS with 5x6 on all cores instead, and
+        //--checkpoint and a file checkpoint it there, so a run cut short
+        //can be carried on with --resume.
+        boolean parallel = false;
+        Path checkpointFile = null;
+        int arg = 0;
+        for( ; arg < args.length && args[arg].startsWith("--"); arg++ )
+        {
+            if( args[arg].equals("--parallel") )
+                parallel = true;
+            else if( args[arg].equals("--checkpoint") 
+                    && arg+1 < args.length )
+                checkpointFile = Paths.get(args[++arg]);
+            else
+                System.out.println("Unknown option " + args[arg]);
+        }
+
+        //An optional argument names a pattern database file,
+        //made by PatternDatabase, to add to the heuristic.
+        if( args.length > arg )
+        {
+            try
+            {
+                Node.setPatternDatabase(
+                        PatternDatabase.load(Paths.get(args[arg])));
+            }
+            catch( IOException e )
+            {
+                System.out.println("Could not load " + args[arg] + ": " 
+                        + e);
+            }
+        }
+        
         time = System.nanoTime();
         System.out.println("DFGS with 4x4");        
         depthFirstGraphSearch(Problem.FOUR_BY_FOUR);
@@ -48,6 +116,125 @@ public class Searches {
         System.out.printf("Execution Time: %.2f ms\n\n\n", 
                 (double)(System.nanoTime() - time)/1000000 );
         
+        time = System.nanoTime();
+        System.out.println("A* with 5x6 in a node arena");        
+        arenaAStarSearch(Problem.FIVE_BY_SIX);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("ARA* with 5x6, 50 ms deadline");        
+        anytimeSearch(Problem.FIVE_BY_SIX, 50L*1000000);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("Weighted A* with 5x6, w = 1.5");        
+        weightedAStarSearch(Problem.FIVE_BY_SIX, 1.5);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("Greedy best-first search with 5x6");        
+        weightedAStarSearch(Problem.FIVE_BY_SIX, Double.POSITIVE_INFINITY);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("Beam search with 5x6, width 16");        
+        beamSearch(Problem.FIVE_BY_SIX, 16);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("A* with 5x6 and a solution cache, three times");
+        cachedAStarSearch(Problem.FIVE_BY_SIX, 3);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("Replanning with 5x6 as the robot moves "
+                + "and new dirt appears");        
+        replanningSearch(Problem.FIVE_BY_SIX);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("Replanning with 5x6 and new dirt every three "
+                + "actions, 20 times");        
+        replanningBenchmark(Problem.FIVE_BY_SIX, 20);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("LRTA* with 5x6, lookahead 16, 20 trials");        
+        realTimeSearch(Problem.FIVE_BY_SIX, 16, 20);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("Held-Karp with 4x4");        
+        heldKarpSearch(Problem.FOUR_BY_FOUR);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("Held-Karp with 5x6");        
+        heldKarpSearch(Problem.FIVE_BY_SIX);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("A* with macro actions with 5x6");        
+        macroAStarSearch(Problem.FIVE_BY_SIX);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("A* with 5x6 and a table on (3,3), (3,4) "
+                + "and (4,3)");        
+        obstacleSearch(Problem.FIVE_BY_SIX, 
+                new int[][] { {3, 3}, {3, 4}, {4, 3} });
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("Backward search with 5x6 from every start");        
+        allStartsSearch(Problem.FIVE_BY_SIX);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        int threads = Runtime.getRuntime().availableProcessors();
+        time = System.nanoTime();
+        System.out.println("HDA* with 5x6 on " + threads + " threads");        
+        parallelAStarSearch(Problem.FIVE_BY_SIX, threads);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("SMA* with 5x6, at most 20000 nodes");        
+        smaStarSearch(Problem.FIVE_BY_SIX, 20000);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("IDA* with 4x4");        
+        idaStarSearch(Problem.FOUR_BY_FOUR);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("IDA* with 5x6");        
+        idaStarSearch(Problem.FIVE_BY_SIX);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
+        time = System.nanoTime();
+        System.out.println("External uniform-cost search with 5x6");        
+        externalSearch(Problem.FIVE_BY_SIX, 1<<12);
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
+        
         nodesExpanded = 0;
         time = System.nanoTime();
         System.out.println("IDS with 4x4");        
@@ -58,63 +245,452 @@ public class Searches {
         
         nodesExpanded = 0;
         time = System.nanoTime();
-        System.out.println("IDS with 5x6");        
-        iterativeDeepeningTreeSearch(Problem.FIVE_BY_SIX);
+        if( parallel )
+        {
+            System.out.println("Parallel IDS with 5x6");        
+            parallelIterativeDeepeningSearch(Problem.FIVE_BY_SIX, 4);
+        }
+        else if( checkpointFile != null )
+        {
+            System.out.println("IDS with 5x6, checkpointed to " 
+                    + checkpointFile);        
+            try
+            {
+                iterativeDeepeningTreeSearch(Problem.FIVE_BY_SIX, 
+                        checkpointFile, CHECKPOINT_INTERVAL);
+            }
+            catch( IOException e )
+            {
+                System.out.println("Could not remove checkpoint: " + e);
+            }
+        }
+        else
+        {
+            System.out.println("IDS with 5x6");        
+            iterativeDeepeningTreeSearch(Problem.FIVE_BY_SIX);
+        }
         System.out.println("Nodes expanded in one hour: " + nodesExpanded );
         System.out.printf("Execution Time: %.2f ms\n\n\n", 
                 (double)(System.nanoTime() - time)/1000000 );
+        
+        nodesExpanded = 0;
+        time = System.nanoTime();
+        System.out.println("IDS with 5x6 and a transposition table");        
+        iterativeDeepeningTreeSearch(Problem.FIVE_BY_SIX, 1<<22);
+        System.out.println("Nodes expanded: " + nodesExpanded );
+        System.out.printf("Execution Time: %.2f ms\n\n\n", 
+                (double)(System.nanoTime() - time)/1000000 );
     }   
     
     //Performs an aStarSearch with heuristics
     public static ProblemState aStarSearch(Problem p)
     {
         System.out.println("First 10 nodes expanded:");
-        nodesExpanded = 0;
         
-        Node root;
-        ArrayList<ArrayList<Boolean>> dirtDistribution;   
-        if( p == Problem.FOUR_BY_FOUR )   
-            dirtDistribution=generateFourByFour();
-        else
-            dirtDistribution=generateFiveBySix();
+        AStar search = new AStar();
+        search.setTrace(10);
+        Node goal = search.search(p.instance().createRoot());
+        nodesExpanded = search.getNodesExpanded();
+        if( goal == null )
+            return ProblemState.FAILURE;
+        goal.printPath();
+        System.out.println("Nodes expanded: " + nodesExpanded 
+                + ", states generated: " + search.getStatesGenerated()
+                + ", nodes reopened: " + search.getNodesReopened());
+        return ProblemState.SOL_FOUND;
+    }
 
-        //Initialize root node.
-        root = new Node(dirtDistribution,3,2,0,0,"START");
-        PriorityQueue<Node> fringe = new PriorityQueue();
-        fringe.add(root);
-        
-        while(!fringe.isEmpty())
+    //Performs A* with the nodes stored off the heap in a NodeArena
+    public static ProblemState arenaAStarSearch(Problem p)
+    {
+        RoomInstance room = p.instance();
+        ArenaAStar search = new ArenaAStar(room.getCols()+1, 
+                room.getRows()+1);
+        int goal = search.search(room.createRoot());
+        nodesExpanded = search.getNodesExpanded();
+        if( goal < 0 )
+            return ProblemState.FAILURE;
+        NodeArena arena = search.getArena();
+        arena.printPath(goal);
+        System.out.println("Nodes expanded: " + nodesExpanded 
+                + ", records: " + arena.size() + " of " 
+                + arena.getStride() + " bytes");
+        return ProblemState.SOL_FOUND;
+    }
+
+    //Performs a uniform-cost search with its layers in temporary files,
+    //keeping at most memoryRecords successors in memory
+    public static ProblemState externalSearch(Problem p, int memoryRecords)
+    {
+        Path directory = null;
+        try
         {
-            Node node = fringe.poll();
-            
-            
-            if(nodesExpanded<10)
-            {                
-                System.out.print((nodesExpanded+1)+". ");
-                node.printNode();
+            directory = Files.createTempDirectory("vacuum-layers");
+            ExternalSearch search = new ExternalSearch(directory, 
+                    memoryRecords);
+            Node goal = search.search(p.instance().createRoot());
+            nodesExpanded = search.getNodesExpanded();
+            if( goal == null )
+                return ProblemState.FAILURE;
+            goal.printPath();
+            System.out.println("Nodes expanded: " + nodesExpanded 
+                    + ", bytes written: " + search.getBytesWritten());
+            return ProblemState.SOL_FOUND;
+        }
+        catch( IOException e )
+        {
+            System.out.println("External search failed: " + e);
+            return ProblemState.FAILURE;
+        }
+        finally
+        {
+            try
+            {
+                if( directory != null )
+                    Files.deleteIfExists(directory);
             }
-            nodesExpanded++;
-            
-            //Check for goal test.
-            if(node.goalTest())
+            catch( IOException e )
             {
-                node.printPath();
-                return ProblemState.SOL_FOUND;
+                System.out.println("Could not delete " + directory);
             }
-            
-            //Expand node.
-            node.expandNode(fringe);           
         }
-        return ProblemState.FAILURE;
+    }
+
+    //Performs ARA*, returning the best solution found within the limit
+    public static ProblemState anytimeSearch(Problem p, long timeLimitNanos)
+    {
+        AnytimeAStar search = new AnytimeAStar(3, 0.5);
+        Node goal = search.search(p.instance().createRoot(), timeLimitNanos);
+        nodesExpanded = search.getNodesExpanded();
+        if( goal == null )
+            return ProblemState.FAILURE;
+        goal.printPath();
+        System.out.printf("Nodes expanded: %d, solutions: %d, "
+                + "suboptimality bound: %.3f%s\n", nodesExpanded,
+                search.getSolutionsFound(), search.getBound(),
+                search.timedOut() ? " (deadline reached)" : "");
+        return ProblemState.SOL_FOUND;
+    }
+
+    //Performs A* several times with one solution cache. The first run
+    //fills the cache, and the later ones are answered from it.
+    public static ProblemState cachedAStarSearch(Problem p, int runs)
+    {
+        SolutionCache cache = new SolutionCache(1<<16);
+        Node goal = null;
+        for( int i = 0; i < runs; i++ )
+        {
+            AStar search = new AStar();
+            search.setSolutionCache(cache);
+            goal = search.search(p.instance().createRoot());
+            nodesExpanded = search.getNodesExpanded();
+            System.out.println("Run " + (i+1) + ": nodes expanded: " 
+                    + nodesExpanded);
+        }
+        if( goal == null )
+            return ProblemState.FAILURE;
+        goal.printPath();
+        System.out.println("Cached states: " + cache.size() + ", hits: " 
+                + cache.getHits() + ", misses: " + cache.getMisses());
+        return ProblemState.SOL_FOUND;
+    }
+
+    //Plans with an IncrementalPlanner, follows the plan for ten actions,
+    //replans, then drops new dirt in the bottom left corner and
+    //replans again
+    public static ProblemState replanningSearch(Problem p)
+    {
+        RoomInstance room = p.instance();
+        IncrementalPlanner planner = new IncrementalPlanner(
+                room.getCols()+1, room.getRows()+1);
+        Node robot = room.createRoot();
+        Node goal = planner.plan(robot);
+        System.out.printf("First plan: %.1f, nodes expanded: %d\n",
+                goal.getCost(), planner.getNodesExpanded());
+
+        //Follow the plan for ten actions.
+        ArrayList<Node> path = new ArrayList<Node>();
+        for( Node n = goal; n != robot; n = n.getParent() )
+            path.add(n);
+        robot = path.get(path.size()-10);
+        long expanded = planner.getNodesExpanded();
+        goal = planner.plan(robot);
+        System.out.printf("After ten actions: %.1f more, nodes expanded: "
+                + "%d\n", goal.getCost()-robot.getCost(), 
+                planner.getNodesExpanded()-expanded);
+
+        //New dirt in the bottom left corner.
+        long[] dirt = robot.getDirt().clone();
+        int b = (room.getRows()-1)*room.getCols();
+        dirt[b>>>6] |= 1L<<b;
+        robot = Node.root(dirt, room.getCols()+1, room.getRows()+1,
+                robot.getRobotPosX(), robot.getRobotPosY());
+        expanded = planner.getNodesExpanded();
+        goal = planner.plan(robot);
+        nodesExpanded = planner.getNodesExpanded()-expanded;
+        System.out.printf("After new dirt: %.1f, nodes expanded: %d\n",
+                goal.getCost(), nodesExpanded);
+        AStar search = new AStar();
+        search.search(robot);
+        System.out.println("A* from scratch expands " 
+                + search.getNodesExpanded());
+        goal.printPath();
+        return ProblemState.SOL_FOUND;
+    }
+
+    //Follows the plans of an IncrementalPlanner, dropping new dirt on a
+    //clean tile every three actions, and compares the nodes expanded by
+    //each replan with those of A* and of a new planner from scratch
+    public static ProblemState replanningBenchmark(Problem p, int rounds)
+    {
+        RoomInstance room = p.instance();
+        int cells = room.getRows()*room.getCols();
+        IncrementalPlanner planner = new IncrementalPlanner(
+                room.getCols()+1, room.getRows()+1);
+        Node robot = room.createRoot();
+        Node goal = planner.plan(robot);
+        long replanned = 0, aStar = 0, fresh = 0;
+        for( int r = 0, b = 0; r < rounds; r++ )
+        {
+            ArrayList<Node> path = new ArrayList<Node>();
+            for( Node n = goal; n != robot; n = n.getParent() )
+                path.add(n);
+            if( path.size() > 3 )
+                robot = path.get(path.size()-3);
+            long[] dirt = robot.getDirt().clone();
+            do
+                b = (b+7)%cells;
+            while( (dirt[b>>>6] & (1L<<b)) != 0 );
+            dirt[b>>>6] |= 1L<<b;
+            robot = Node.root(dirt, room.getCols()+1, room.getRows()+1,
+                    robot.getRobotPosX(), robot.getRobotPosY());
+            long expanded = planner.getNodesExpanded();
+            goal = planner.plan(robot);
+            replanned += planner.getNodesExpanded()-expanded;
+            AStar search = new AStar();
+            search.search(robot);
+            aStar += search.getNodesExpanded();
+            IncrementalPlanner scratch = new IncrementalPlanner(
+                    room.getCols()+1, room.getRows()+1);
+            scratch.plan(robot);
+            fresh += scratch.getNodesExpanded();
+        }
+        nodesExpanded = replanned;
+        System.out.println("Nodes expanded over " + rounds + " replans: "
+                + replanned + ", A* from scratch: " + aStar
+                + ", a new planner: " + fresh);
+        return ProblemState.SOL_FOUND;
+    }
+
+    //Finds the optimal cost from every start tile with one backward
+    //search, and prints the path from the cheapest start
+    public static ProblemState allStartsSearch(Problem p)
+    {
+        RoomInstance room = p.instance();
+        AllStartsSearch search = new AllStartsSearch(room.getCols()+1, 
+                room.getRows()+1);
+        search.search(room.createRoot());
+        nodesExpanded = search.getNodesExpanded();
+        int bestRow = 0, bestCol = 0;
+        for( int i = 1; i <= room.getRows(); i++ )
+        {
+            for( int j = 1; j <= room.getCols(); j++ )
+            {
+                double cost = search.getCost(i, j);
+                System.out.printf("%6.1f", cost);
+                if( cost >= 0 && (bestRow == 0 
+                        || cost < search.getCost(bestRow, bestCol)) )
+                {
+                    bestRow = i;
+                    bestCol = j;
+                }
+            }
+            System.out.println();
+        }
+        if( bestRow == 0 )
+            return ProblemState.FAILURE;
+        System.out.println("Cheapest start: (" + bestRow + "," + bestCol 
+                + ")");
+        Node start = Node.root(room.getDirt(), room.getCols()+1, 
+                room.getRows()+1, bestRow, bestCol, room.getOracle());
+        search.getSolution(start).printPath();
+        System.out.println("Nodes expanded: " + nodesExpanded 
+                + ", states generated: " + search.getStatesGenerated());
+        return ProblemState.SOL_FOUND;
+    }
+
+    //Performs A* and A* with macro actions in the room with the given
+    //tiles blocked. The distances around them are worked out first.
+    public static ProblemState obstacleSearch(Problem p, int[][] blocked)
+    {
+        long time = System.nanoTime();
+        RoomInstance room = p.instance().withBlocked(blocked);
+        System.out.printf("Distance table: %.2f ms\n", 
+                (double)(System.nanoTime() - time)/1000000);
+        AStar search = new AStar();
+        Node goal = search.search(room.createRoot());
+        nodesExpanded = search.getNodesExpanded();
+        if( goal == null )
+            return ProblemState.FAILURE;
+        goal.printPath();
+        System.out.println("Nodes expanded: " + nodesExpanded);
+        MacroAStar macro = new MacroAStar(room.getCols()+1, 
+                room.getRows()+1);
+        Node macroGoal = macro.search(room.createRoot());
+        System.out.printf("Macro actions: %.1f, nodes expanded: %d\n", 
+                macroGoal.getCost(), macro.getNodesExpanded());
+        return ProblemState.SOL_FOUND;
+    }
+
+    //Performs A* whose actions each go to a dirty tile and suck it
+    public static ProblemState macroAStarSearch(Problem p)
+    {
+        RoomInstance room = p.instance();
+        MacroAStar search = new MacroAStar(room.getCols()+1, 
+                room.getRows()+1);
+        Node goal = search.search(room.createRoot());
+        nodesExpanded = search.getNodesExpanded();
+        if( goal == null )
+            return ProblemState.FAILURE;
+        goal.printPath();
+        System.out.println("Nodes expanded: " + nodesExpanded 
+                + ", states generated: " + search.getStatesGenerated());
+        return ProblemState.SOL_FOUND;
+    }
+
+    //Solves the room with the Held-Karp dynamic program over the dirty
+    //tiles, with each layer filled on the common fork/join pool. A room
+    //with more dirty tiles than it takes is solved with A* instead
+    public static ProblemState heldKarpSearch(Problem p)
+    {
+        Node root = p.instance().createRoot();
+        int dirty = 0;
+        for( long w : root.getDirt() )
+            dirty += Long.bitCount(w);
+        if( dirty > HeldKarp.MAX_DIRT )
+        {
+            System.out.println(dirty + " dirty tiles, more than Held-Karp "
+                    + "takes, so A* instead");
+            return aStarSearch(p);
+        }
+        HeldKarp solver = new HeldKarp(ForkJoinPool.commonPool());
+        Node goal = solver.solve(root);
+        if( goal == null )
+            return ProblemState.FAILURE;
+        goal.printPath();
+        System.out.println("Subset entries: " + solver.getEntries());
+        return ProblemState.SOL_FOUND;
+    }
+
+    //Runs a RealTimeAgent from the start for several trials. It keeps
+    //what it learned, so later trials take cheaper paths.
+    public static ProblemState realTimeSearch(Problem p, int lookahead,
+            int trials)
+    {
+        RoomInstance room = p.instance();
+        RealTimeAgent agent = new RealTimeAgent(lookahead, 
+                room.getDirt().length);
+        Node goal = null;
+        for( int i = 0; i < trials; i++ )
+        {
+            long expanded = agent.getNodesExpanded();
+            int moves = agent.getMoves();
+            goal = agent.runTrial(room.createRoot(), 100000);
+            if( !goal.goalTest() )
+                return ProblemState.FAILURE;
+            moves = agent.getMoves()-moves;
+            System.out.printf("Trial %d: %.1f in %d actions, %.1f nodes "
+                    + "expanded per action\n", i+1, goal.getCost(), moves,
+                    (double)(agent.getNodesExpanded()-expanded)/moves);
+        }
+        nodesExpanded = agent.getNodesExpanded();
+        goal.printPath();
+        System.out.println("Learned states: " + agent.getLearnedStates());
+        return ProblemState.SOL_FOUND;
+    }
+
+    //Performs weighted A*, or greedy best-first search if the weight is
+    //infinite. The cost found is at most weight times the optimal cost.
+    public static ProblemState weightedAStarSearch(Problem p, double weight)
+    {
+        WeightedAStar search = weight == Double.POSITIVE_INFINITY 
+                ? WeightedAStar.greedy() : new WeightedAStar(weight);
+        ProblemState s = search.search(p.instance().createRoot());
+        nodesExpanded = search.getNodesExpanded();
+        if( s == ProblemState.SOL_FOUND )
+            search.getSolution().printPath();
+        System.out.println("Nodes expanded: " + nodesExpanded);
+        return s;
+    }
+
+    //Performs beam search keeping width nodes per layer
+    public static ProblemState beamSearch(Problem p, int width)
+    {
+        BeamSearch search = new BeamSearch(width);
+        ProblemState s = search.search(p.instance().createRoot());
+        nodesExpanded = search.getNodesExpanded();
+        if( s == ProblemState.SOL_FOUND )
+            search.getSolution().printPath();
+        System.out.println("Nodes expanded: " + nodesExpanded);
+        return s;
+    }
+
+    //Performs hash-distributed A* on the given number of threads.
+    public static ProblemState parallelAStarSearch(Problem p, int threads)
+    {
+        Node root = p.instance().createRoot();
+        ParallelAStar search = new ParallelAStar(threads);
+        Node goal = search.search(root);
+        nodesExpanded = search.getNodesExpanded();
+        System.out.println("Nodes expanded: " + nodesExpanded 
+                + ", nodes reopened: " + search.getNodesReopened());
+        if( goal == null )
+            return ProblemState.FAILURE;
+        goal.printPath();
+        return ProblemState.SOL_FOUND;
+    }
+
+    //Performs SMA*, an A* that never keeps more than memoryLimit nodes.
+    public static ProblemState smaStarSearch(Problem p, int memoryLimit)
+    {
+        Node root = p.instance().createRoot();
+        MemoryBoundedAStar search = new MemoryBoundedAStar(memoryLimit);
+        Node goal = search.search(root);
+        nodesExpanded = search.getNodesExpanded();
+        System.out.println("Nodes expanded: " + nodesExpanded 
+                + ", nodes dropped: " + search.getNodesDropped());
+        if( goal == null )
+            return ProblemState.FAILURE;
+        goal.printPath();
+        return ProblemState.SOL_FOUND;
+    }
+
+    //Performs IDA*, with the A* heuristic bounding each iteration.
+    public static ProblemState idaStarSearch(Problem p)
+    {
+        Node root = p.instance().createRoot();
+        IterativeDeepeningAStar search = new IterativeDeepeningAStar(root);
+        Node goal = search.search();
+        nodesExpanded = search.getNodesExpanded();
+        System.out.println("Nodes expanded: " + nodesExpanded);
+        if( goal == null )
+            return ProblemState.FAILURE;
+        goal.printPath();
+        return ProblemState.SOL_FOUND;
     }
 
     public static ProblemState recursiveDLS(Node node, Problem p, int limit)
     {
         //Timeout if solution not found after an hour.
-        if((System.nanoTime()-time)/1000000000>60*60)
+        //The clock is only read once every CLOCK_INTERVAL calls.
+        if( timedOut || (++calls % CLOCK_INTERVAL == 0 
+                && clockCheck(node, limit)) )
         {                        
+            timedOut = true;
             return ProblemState.FAILURE;
         }
+        if( resumePath != null && node.getDepth() == resumePath.length )
+            resumePath = null;//Back where the checkpoint was taken.
         boolean reachedCutoff = false;
         int lastIndex;
         Node n;
@@ -127,6 +703,15 @@ public class Searches {
         //Check if depth limit is reached.
         else if( node.getDepth() == limit )
         {
+            cutoffSeen = true;
+            return ProblemState.CUTOFF;
+        }
+        //Skip states already searched at least this deep, in this 
+        //iteration or an earlier one.
+        else if( table != null && table.probe(node.getDirt(), 
+                node.position()) >= limit-node.getDepth() )
+        {
+            cutoffSeen = true;
             return ProblemState.CUTOFF;
         }
         else
@@ -134,12 +719,16 @@ public class Searches {
             //Expand nodes.
             node.expandNode(limit,p);           
             
-            if(nodesExpanded<10)
-            {             
-                System.out.print((nodesExpanded+1)+". ");
-                node.printNode();
-            }   
-            nodesExpanded++;
+            //A node on the way to a checkpoint was counted before it.
+            if( resumePath == null )
+            {
+                if(nodesExpanded<10)
+                {             
+                    System.out.print((nodesExpanded+1)+". ");
+                    node.printNode();
+                }   
+                nodesExpanded++;
+            }
             
             while(!node.getChildren().isEmpty())
             {
@@ -147,6 +736,9 @@ public class Searches {
                 lastIndex=node.getChildren().size()-1;
                 n=node.getChildren().get(lastIndex);
                 node.getChildren().remove(n);
+                if( resumePath != null && n.getActionCode() 
+                        != resumePath[node.getDepth()] )
+                    continue;//Searched before the checkpoint.
                 ProblemState result = recursiveDLS(n, p, limit);
                 //Remove node to converse memory.
                 if( result == ProblemState.CUTOFF )
@@ -154,6 +746,9 @@ public class Searches {
                 else if( result != ProblemState.FAILURE )
                     return result;
             }
+            if( table != null )
+                table.store(node.getDirt(), node.position(), 
+                        limit-node.getDepth());
         }
 
         if( reachedCutoff )
@@ -162,50 +757,113 @@ public class Searches {
         return ProblemState.FAILURE;
     }
 
-    public static ProblemState depthLimitedSearch(Problem p, int limit)
+    //Reads the clock, and takes a checkpoint if one is due. Returns
+    //whether the hour of this run is up, in which case the last
+    //checkpoint is of this node so the search can go on from here.
+    private static boolean clockCheck(Node node, int limit)
     {
-        Node n;
-        ArrayList<ArrayList<Boolean>> dirtDistribution;   
-        if( p == Problem.FOUR_BY_FOUR )   
-            dirtDistribution=generateFourByFour();
-        else
-            dirtDistribution=generateFiveBySix();
+        long elapsed = System.nanoTime()-time;
+        boolean over = elapsed/1000000000 > 60*60;
+        if( checkpoint != null && over )
+            checkpoint.sync();
+        if( checkpoint != null && (over || checkpoint.due()) )
+            checkpoint.saveIterativeDeepening(node, limit, cutoffSeen,
+                    nodesExpanded, earlierNanos+elapsed);
+        return over;
+    }
 
-        n = new Node(dirtDistribution,3,2,0,0, "START");//Make node.
+    public static ProblemState depthLimitedSearch(Problem p, int limit)
+    {
+        Node n = p.instance().createRoot();//Make node.
         ProblemState s = recursiveDLS(n,p,limit);
         return s;
     }
 
     public static ProblemState iterativeDeepeningTreeSearch(Problem p)
     {       
-        for( int depth = 0; depth < 10000; depth++ )
+        timedOut = false;
+        cutoffSeen = false;
+        return deepen(p, 0);
+    }
+
+    //Runs the IDS iterations from the given depth limit on.
+    private static ProblemState deepen(Problem p, int firstDepth)
+    {
+        for( int depth = firstDepth; depth < 10000; depth++ )
         {
             System.out.println("At depth " + depth);
             ProblemState s = depthLimitedSearch(p, depth);
+            //A resumed iteration may have reached the limit before its
+            //checkpoint, where the nodes on the way do not see it.
+            if( s == ProblemState.FAILURE && cutoffSeen && !timedOut )
+                s = ProblemState.CUTOFF;
             if( s != ProblemState.CUTOFF )
                 return s;
+            cutoffSeen = false;
         }
         return ProblemState.FAILURE;
     }
+
+    //IDS that writes a checkpoint to file at most once every
+    //intervalNanos. If the hour runs out the last checkpoint is kept, to
+    //be resumed, otherwise it is removed when the search ends.
+    public static ProblemState iterativeDeepeningTreeSearch(Problem p,
+            Path file, long intervalNanos) throws IOException
+    {
+        return withCheckpoint(new SearchCheckpoint(file, p, intervalNanos),
+                () -> iterativeDeepeningTreeSearch(p));
+    }
+
+    //IDS with the subtrees above splitDepth searched as fork/join tasks.
+    public static ProblemState parallelIterativeDeepeningSearch(Problem p,
+            int splitDepth)
+    {
+        Node root = p.instance().createRoot();
+        ParallelIterativeDeepening search = new ParallelIterativeDeepening(
+                ForkJoinPool.commonPool(), splitDepth);
+        //Same one hour limit as the sequential search.
+        ProblemState s = search.search(root, 60L*60*1000000000);
+        nodesExpanded = search.getNodesExpanded();
+        System.out.println("Depth reached: " + search.getDepthReached());
+        if( s == ProblemState.SOL_FOUND )
+            search.getSolution().printPath();
+        return s;
+    }
+
+    //IDS with a transposition table of tableSize entries, kept across
+    //iterations, so repeated states are not searched again.
+    public static ProblemState iterativeDeepeningTreeSearch(Problem p, 
+            int tableSize)
+    {
+        table = new TranspositionTable(p.instance().getDirt().length, 
+                tableSize);
+        ProblemState s = iterativeDeepeningTreeSearch(p);
+        System.out.println("Table probes: " + table.getProbes() 
+                + ", hits: " + table.getHits());
+        table = null;
+        return s;
+    }
     
     public static ProblemState depthFirstGraphSearch(Problem p)
     {
         System.out.println("First 10 nodes expanded:");
         nodesExpanded = 0;
         
-        Node root;
-        ArrayList<ArrayList<Boolean>> dirtDistribution;   
-        ArrayList<Node> visited = new ArrayList();
-        if( p == Problem.FOUR_BY_FOUR )   
-            dirtDistribution=generateFourByFour();
-        else
-            dirtDistribution=generateFiveBySix();
-
         //Initialize root node.
-        root = new Node(dirtDistribution,3,2,0,0,"START");
+        Node root = p.instance().createRoot();
         Stack<Node> fringe = new Stack();
+        StateTable seen = new StateTable(root.getDirt().length);
+        seen.add(root.getDirt(), root.position());
         fringe.push(root);
-        
+        if( checkpoint != null )
+            checkpoint.recordSeen(root);
+        return depthFirstGraphSearch(fringe, seen);
+    }
+
+    //Runs DFGS from the given fringe and seen states.
+    private static ProblemState depthFirstGraphSearch(Stack<Node> fringe,
+            StateTable seen)
+    {
         while(!fringe.empty())
         {
             Node node = fringe.pop();
@@ -225,13 +883,84 @@ public class Searches {
             }
             
             //Expand node.
-            node.expandNode(fringe, visited);
-            
-            visited.add(node);
+            int pushed = fringe.size();
+            node.expandNode(fringe, seen);
             
+            //The states just pushed are the ones new to the seen table.
+            if( checkpoint != null )
+            {
+                for( ; pushed < fringe.size(); pushed++ )
+                    checkpoint.recordSeen(fringe.get(pushed));
+                if( checkpoint.due() )
+                    checkpoint.saveDepthFirst(fringe, nodesExpanded, 
+                            earlierNanos+System.nanoTime()-time);
+            }
         }
         return ProblemState.FAILURE;
     }
+
+    //DFGS that writes a checkpoint to file at most once every
+    //intervalNanos. It is removed when the search ends.
+    public static ProblemState depthFirstGraphSearch(Problem p, Path file,
+            long intervalNanos) throws IOException
+    {
+        timedOut = false;
+        return withCheckpoint(new SearchCheckpoint(file, p, intervalNanos),
+                () -> depthFirstGraphSearch(p));
+    }
+
+    //Carries on the IDS or DFGS whose checkpoint is in file, with the
+    //node count it had, and goes on writing checkpoints to it. The time
+    //already spent is only reported: the search gets a new hour, so one
+    //stopped by the hour running out goes on as well.
+    public static ProblemState resume(Path file, long intervalNanos)
+            throws IOException
+    {
+        SearchCheckpoint.Saved saved = SearchCheckpoint.read(file);
+        Problem p = saved.getProblem();
+        nodesExpanded = saved.getNodesExpanded();
+        earlierNanos = saved.getElapsedNanos();
+        time = System.nanoTime();
+        timedOut = false;
+        SearchCheckpoint c = new SearchCheckpoint(file, saved, intervalNanos);
+        System.out.printf("%.0f s and %d nodes expanded before\n", 
+                (double)earlierNanos/1000000000, nodesExpanded);
+        if( saved.getKind() == SearchCheckpoint.IDS )
+        {
+            System.out.println("Resuming IDS with " + p + " at depth " 
+                    + saved.getLimit());
+            resumePath = saved.getPath();
+            cutoffSeen = saved.getCutoffSeen();
+            return withCheckpoint(c, () -> deepen(p, saved.getLimit()));
+        }
+        System.out.println("Resuming DFGS with " + p + " from " 
+                + saved.getFringe().size() + " nodes on the fringe");
+        return withCheckpoint(c, () -> depthFirstGraphSearch(
+                saved.getFringe(), saved.getSeen()));
+    }
+
+    //Runs a search with the given checkpoint. The checkpoint is kept if
+    //the search ran out of time or threw, otherwise removed.
+    private static ProblemState withCheckpoint(SearchCheckpoint c,
+            Supplier<ProblemState> search) throws IOException
+    {
+        checkpoint = c;
+        ProblemState s;
+        try
+        {
+            s = search.get();
+        }
+        finally
+        {
+            c.close();
+            checkpoint = null;
+            resumePath = null;
+            earlierNanos = 0;
+        }
+        if( !timedOut )
+            c.delete();
+        return s;
+    }
     
      public static ArrayList<ArrayList<Boolean>> generateFourByFour()
     {
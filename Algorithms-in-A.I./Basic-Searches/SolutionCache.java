@@ -0,0 +1,181 @@
+/*
+ * File:   SolutionCache.java
+ * Author: Alain Chen
+ *
+ * This class remembers optimal solutions by state: the room size, its
+ * blocked tiles, the robot position and the dirt. For every state on a
+ * solved path it keeps the optimal cost to the goal and the actions that
+ * reach it, since the rest of an optimal path is optimal from every state
+ * on it. Blocked tiles are kept as their bitmask, not the room's
+ * DistanceOracle, so the cache does not keep distance tables alive.
+ *
+ * A search that reaches a cached state can use the cost as an exact
+ * heuristic value and finish with the cached actions. A repeated query
+ * is answered from the cache at the root.
+ *
+ * The least recently used entry is dropped once the cache is full.
+ * All methods are synchronized, so one cache can serve many searches.
+ *
+ */
+package BasicAISearches;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+public class SolutionCache {
+
+    private final LinkedHashMap<Key, Solution> map;
+    private long hits;
+    private long misses;
+
+    //A state of a room of a given size and blocked tiles.
+    private static final class Key {
+
+        final int dirtWidth;
+        final int dirtHeight;
+        final long[] blocked;//Null if no tile is blocked.
+        final int position;
+        final long[] dirt;
+        final int hash;
+
+        Key(int dirtWidth, int dirtHeight, DistanceOracle room, 
+                int position, long[] dirt)
+        {
+            this.dirtWidth = dirtWidth;
+            this.dirtHeight = dirtHeight;
+            blocked = room == null ? null : room.blockedMask();
+            this.position = position;
+            this.dirt = dirt;
+            hash = 31*(31*(31*dirtWidth+dirtHeight) + Objects.hashCode(room))
+                    + StateTable.hash(dirt, position);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if( !(o instanceof Key) )
+                return false;
+            Key k = (Key)o;
+            return hash == k.hash && position == k.position
+                    && dirtWidth == k.dirtWidth 
+                    && dirtHeight == k.dirtHeight
+                    && Arrays.equals(blocked, k.blocked)
+                    && Arrays.equals(dirt, k.dirt);
+        }
+    }
+
+    //The optimal cost from a state in tenths and the actions to take.
+    public static final class Solution {
+
+        private final int cost;
+        private final byte[] actions;
+
+        Solution(int cost, byte[] actions)
+        {
+            this.cost = cost;
+            this.actions = actions;
+        }
+
+        public double getCost()
+        {
+            return cost/10.0;
+        }
+
+        int costTenths()
+        {
+            return cost;
+        }
+
+        public int length()
+        {
+            return actions.length;
+        }
+
+        public int getAction(int i)
+        {
+            return actions[i];
+        }
+
+        //The goal reached by taking the actions from the given node.
+        public Node apply(Node n)
+        {
+            for( int i = 0; i < actions.length; i++ )
+                n = n.successor(actions[i]);
+            return n;
+        }
+    }
+
+    public SolutionCache(final int capacity)
+    {
+        map = new LinkedHashMap<Key, Solution>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Solution> e)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    private static Key key(Node n)
+    {
+        return new Key(n.getDirtWidth(), n.getDirtHeight(), n.getOracle(),
+                n.position(), n.getDirt());
+    }
+
+    //The cached solution from the state of a node, or null.
+    public synchronized Solution get(Node n)
+    {
+        Solution s = map.get(key(n));
+        if( s == null )
+            misses++;
+        else
+            hits++;
+        return s;
+    }
+
+    //Stores every state on the path to a goal that was found by an
+    //optimal search.
+    public synchronized void putPath(Node goal)
+    {
+        ArrayList<Node> path = new ArrayList<Node>();
+        for( Node n = goal; n != null; n = n.getParent() )
+            path.add(n);
+        int total = goal.gTenths();
+        byte[] actions = new byte[path.size()-1];
+        //path holds the goal first, so actions come out in path order.
+        for( int i = 0; i < actions.length; i++ )
+            actions[i] = (byte)path.get(actions.length-1-i).getActionCode();
+        for( int i = path.size()-1; i >= 0; i-- )
+        {
+            Node n = path.get(i);
+            //The states on the path up to n, and the actions after it.
+            int done = path.size()-1-i;
+            map.put(key(n), new Solution(total-n.gTenths(),
+                    Arrays.copyOfRange(actions, done, actions.length)));
+        }
+    }
+
+    public synchronized int size()
+    {
+        return map.size();
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+}
@@ -0,0 +1,164 @@
+/* 
+ * File:   StateTable.java
+ * Author: Alain Chen
+ * 
+ * This class is a hash table keyed on packed vacuum-world states,
+ * that is the dirt bitmask of a node plus the robot position.
+ * It uses open addressing with linear probing over flat primitive arrays,
+ * so no Node or boxed key is kept alive by the table.
+ * Each key maps to an int value, which searches use as a node index,
+ * a depth or just ignore when the table is used as a set.
+ * 
+ */
+package BasicAISearches;
+import java.util.Arrays;
+
+public class StateTable {
+
+    private final int words;//Number of longs in a dirt bitmask.
+    private final int stride;//Longs per slot, dirt words plus position.
+    private long[] keys;
+    private int[] values;
+    private int capacity;//Number of slots, always a power of two.
+    private int size;
+
+    public StateTable(int words)
+    {
+        this(words, 1024);
+    }
+
+    public StateTable(int words, int expectedSize)
+    {
+        this.words = words;
+        stride = words+1;
+        capacity = 16;
+        while( capacity < 2*expectedSize )
+            capacity <<= 1;
+        keys = new long[capacity*stride];
+        values = new int[capacity];
+        size = 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    //Returns the value stored for the state, or -1 if it is not present.
+    public int get(long[] dirt, int pos)
+    {
+        int slot = find(dirt, pos);
+        return keys[slot*stride+words] == 0 ? -1 : values[slot];
+    }
+
+    public boolean contains(long[] dirt, int pos)
+    {
+        return keys[find(dirt, pos)*stride+words] != 0;
+    }
+
+    //Adds the state if it is not present.
+    //Returns true if it was added, false if it was already in the table.
+    public boolean add(long[] dirt, int pos)
+    {
+        int slot = find(dirt, pos);
+        if( keys[slot*stride+words] != 0 )
+            return false;
+        insert(slot, dirt, pos, 0);
+        return true;
+    }
+
+    //Stores the value for the state.
+    //Returns the previous value, or -1 if the state was not present.
+    public int put(long[] dirt, int pos, int value)
+    {
+        int slot = find(dirt, pos);
+        if( keys[slot*stride+words] != 0 )
+        {
+            int old = values[slot];
+            values[slot] = value;
+            return old;
+        }
+        insert(slot, dirt, pos, value);
+        return -1;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+
+    //Returns the slot holding the state, or the empty slot where it goes.
+    private int find(long[] dirt, int pos)
+    {
+        int mask = capacity-1;
+        int slot = hash(dirt, pos) & mask;
+        //Positions are stored off by one so that 0 marks an empty slot.
+        long tag = pos+1;
+        while(true)
+        {
+            int base = slot*stride;
+            long k = keys[base+words];
+            if( k == 0 )
+                return slot;
+            if( k == tag && sameDirt(base, dirt) )
+                return slot;
+            slot = (slot+1) & mask;
+        }
+    }
+
+    private boolean sameDirt(int base, long[] dirt)
+    {
+        for( int w = 0; w < words; w++ )
+            if( keys[base+w] != dirt[w] )
+                return false;
+        return true;
+    }
+
+    private void insert(int slot, long[] dirt, int pos, int value)
+    {
+        int base = slot*stride;
+        System.arraycopy(dirt, 0, keys, base, words);
+        keys[base+words] = pos+1;
+        values[slot] = value;
+        size++;
+        //Keep the load factor at or below one half.
+        if( 2*size > capacity )
+            grow();
+    }
+
+    private void grow()
+    {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        int oldCapacity = capacity;
+        capacity <<= 1;
+        keys = new long[capacity*stride];
+        values = new int[capacity];
+        long[] dirt = new long[words];
+        for( int s = 0; s < oldCapacity; s++ )
+        {
+            int base = s*stride;
+            if( oldKeys[base+words] == 0 )
+                continue;
+            System.arraycopy(oldKeys, base, dirt, 0, words);
+            int pos = (int)oldKeys[base+words]-1;
+            int slot = find(dirt, pos);
+            System.arraycopy(oldKeys, base, keys, slot*stride, stride);
+            values[slot] = oldValues[s];
+        }
+    }
+
+    //Hash of a packed state, shared with Node.hashCode().
+    public static int hash(long[] dirt, int pos)
+    {
+        long h = pos*0x9E3779B97F4A7C15L;
+        for( int w = 0; w < dirt.length; w++ )
+            h = (h ^ dirt[w])*0xC2B2AE3D27D4EB4FL;
+        //Final avalanche from MurmurHash3.
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int)h;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * File:   TranspositionTable.java
+ * Author: Alain Chen
+ *
+ * This class is a fixed-size transposition table for depth-limited search.
+ * For a state it records the largest remaining depth at which the state
+ * was searched without finding a goal. Meeting the state again with no
+ * more depth left than that can not find a goal either.
+ *
+ * The table never grows. Each hash bucket has two entries: one keeps
+ * the deepest search seen for the bucket and the other always takes
+ * the newest state, so deep results survive while recent ones still fit.
+ *
+ */
+package BasicAISearches;
+
+public class TranspositionTable {
+
+    private final int words;//Number of longs in a dirt bitmask.
+    private final int stride;//Longs per entry, dirt words plus position.
+    private final long[] keys;
+    private final int[] depths;
+    private final int mask;
+    private long probes;
+    private long hits;
+
+    //size is the number of entries, rounded up to a power of two.
+    public TranspositionTable(int words, int size)
+    {
+        this.words = words;
+        stride = words+1;
+        int buckets = 1;
+        while( 2*buckets < size )
+            buckets <<= 1;
+        mask = buckets-1;
+        keys = new long[2*buckets*stride];
+        depths = new int[2*buckets];
+    }
+
+    public long getProbes()
+    {
+        return probes;
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    //Returns the remaining depth the state was searched to without
+    //finding a goal, or -1 if the table does not know the state.
+    public int probe(long[] dirt, int pos)
+    {
+        probes++;
+        int e = 2*(StateTable.hash(dirt, pos) & mask);
+        for( int i = e; i < e+2; i++ )
+            if( matches(i, dirt, pos) )
+            {
+                hits++;
+                return depths[i];
+            }
+        return -1;
+    }
+
+    //Records that the state was searched to the remaining depth
+    //without finding a goal.
+    public void store(long[] dirt, int pos, int remaining)
+    {
+        int e = 2*(StateTable.hash(dirt, pos) & mask);
+        int slot;
+        if( matches(e, dirt, pos) )
+        {
+            if( depths[e] >= remaining )
+                return;
+            slot = e;
+        }
+        else if( keys[e*stride+words] == 0 || depths[e] <= remaining )
+            slot = e;
+        else
+            slot = e+1;
+        System.arraycopy(dirt, 0, keys, slot*stride, words);
+        //Positions are stored off by one so that 0 marks an empty entry.
+        keys[slot*stride+words] = pos+1;
+        depths[slot] = remaining;
+    }
+
+    private boolean matches(int entry, long[] dirt, int pos)
+    {
+        int base = entry*stride;
+        if( keys[base+words] != pos+1 )
+            return false;
+        for( int w = 0; w < words; w++ )
+            if( keys[base+w] != dirt[w] )
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * File:   WeightedAStar.java
+ * Author: Alain Chen
+ *
+ * This class implements weighted A*, which orders nodes by g + w*h, and
+ * greedy best-first search, which orders them by h alone.
+ * With a weight w the heuristic may overestimate by up to that factor,
+ * so the solution costs at most w times the optimal cost. The heuristic
+ * is consistent, so the bound holds without reopening closed nodes.
+ * Greedy search gives no bound, but usually expands the fewest nodes.
+ *
+ */
+package BasicAISearches;
+import java.util.PriorityQueue;
+
+public class WeightedAStar {
+
+    private final double weight;//Infinite for greedy search.
+    private Node solution;
+    private long nodesExpanded;
+
+    //A fringe entry. It is stale once its node has a cheaper path.
+    private static final class Entry implements Comparable<Entry> {
+
+        final Node node;
+        final double key;
+        final int g;
+
+        Entry(Node node, double key)
+        {
+            this.node = node;
+            this.key = key;
+            g = node.gTenths();
+        }
+
+        public int compareTo(Entry o)
+        {
+            int c = Double.compare(key, o.key);
+            if( c != 0 )
+                return c;
+            return Integer.compare(o.g, g);
+        }
+    }
+
+    //Weighted A* with a weight of at least 1.
+    public WeightedAStar(double weight)
+    {
+        if( weight < 1 )
+            throw new IllegalArgumentException("Weight below 1: " + weight);
+        this.weight = weight;
+    }
+
+    public static WeightedAStar greedy()
+    {
+        return new WeightedAStar(Double.POSITIVE_INFINITY);
+    }
+
+    public double getWeight()
+    {
+        return weight;
+    }
+
+    public long getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    //The goal found by the last search, or null.
+    public Node getSolution()
+    {
+        return solution;
+    }
+
+    //The cost of the solution found, or infinity if there is none.
+    public double getCost()
+    {
+        return solution == null ? Double.POSITIVE_INFINITY 
+                : solution.getCost();
+    }
+
+    public ProblemState search(Node root)
+    {
+        solution = null;
+        nodesExpanded = 0;
+        StateTable closed = new StateTable(root.getDirt().length);
+        //The cheapest path cost seen for each state, in tenths.
+        StateTable costs = new StateTable(root.getDirt().length);
+        PriorityQueue<Entry> fringe = new PriorityQueue<Entry>();
+        costs.put(root.getDirt(), root.position(), 0);
+        fringe.add(new Entry(root, key(root)));
+
+        while( !fringe.isEmpty() )
+        {
+            Node node = fringe.poll().node;
+            if( !closed.add(node.getDirt(), node.position()) )
+                continue;
+            if( node.goalTest() )
+            {
+                solution = node;
+                return ProblemState.SOL_FOUND;
+            }
+            nodesExpanded++;
+            for( int a = Node.NUM_ACTIONS-1; a >= 0; a-- )
+            {
+                Node n = node.successor(a);
+                if( n == null || closed.contains(n.getDirt(), n.position()) )
+                    continue;
+                int g = costs.get(n.getDirt(), n.position());
+                if( g >= 0 && g <= n.gTenths() )
+                    continue;
+                costs.put(n.getDirt(), n.position(), n.gTenths());
+                fringe.add(new Entry(n, key(n)));
+            }
+        }
+        return ProblemState.FAILURE;
+    }
+
+    private double key(Node n)
+    {
+        if( weight == Double.POSITIVE_INFINITY )
+            return n.hTenths();
+        return n.gTenths() + weight*n.hTenths();
+    }
+}